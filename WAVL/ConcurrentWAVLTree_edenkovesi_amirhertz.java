@@ -0,0 +1,350 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * ConcurrentWAVLTree
+ *
+ * A thread safe WAVL tree with distinct integer keys and info.
+ * A WAVLTree guarded by a StampedLock:
+ * search, min, max, size and range scans run optimistically,
+ * they walk the tree without taking any lock and then validate the stamp.
+ * Only if a writer got in between, the read is repeated under the read lock.
+ * insert and delete take the write lock.
+ *
+ * Optimistic reads may see the tree in the middle of a rotation,
+ * so every walk checks for null links and is bounded in steps,
+ * nothing read is trusted before the stamp is validated.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class ConcurrentWAVLTree {
+
+	private static final int MAX_DEPTH = 64; //a WAVL tree with less than 2^31 nodes is less than 62 high
+
+	private final WAVLTree tree;
+	private final StampedLock lock = new StampedLock();
+	private volatile WAVLTreeMetrics metrics; //null unless enableMetrics() was called
+
+   /**
+	* create an empty thread safe WAVL
+	*/
+	public ConcurrentWAVLTree(){
+		this(new WAVLTree());
+	}
+
+   /**
+	* guards tree, which must not be used by anyone else from now on
+	*/
+	ConcurrentWAVLTree(WAVLTree tree){
+		this.tree = tree;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * lock free unless a writer is active
+	 * time complexity: O(log n)
+	 */
+	public String search(int k){
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L){
+			WAVLTree.WAVLNode node = tree.getRoot();
+			for (int steps = 0; node != null && steps < MAX_DEPTH; steps++){
+				if (node.isExternal()){
+					if (lock.validate(stamp)) return searched(steps, null);
+					break;
+				}
+				int key = node.getKey();
+				if (k == key){
+					String info = node.getInfo();
+					if (lock.validate(stamp)) return searched(steps + 1, info);
+					break;
+				}
+				node = k < key ? node.getLeft() : node.getRight();
+			}
+		}
+		stamp = lock.readLock();
+		try{
+			return tree.search(k);
+		}
+		finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// counts an optimistic search that descended through visited nodes
+	private String searched(int visited, String info){
+		WAVLTreeMetrics metrics = this.metrics;
+		if (metrics != null){
+			metrics.search();
+			metrics.descent(visited);
+		}
+		return info;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String min(){
+		long stamp = lock.tryOptimisticRead();
+		String info = tree.min();
+		if (lock.validate(stamp)) return info;
+		stamp = lock.readLock();
+		try{
+			return tree.min();
+		}
+		finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String max(){
+		long stamp = lock.tryOptimisticRead();
+		String info = tree.max();
+		if (lock.validate(stamp)) return info;
+		stamp = lock.readLock();
+		try{
+			return tree.max();
+		}
+		finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		long stamp = lock.tryOptimisticRead();
+		int size = tree.size();
+		if (lock.validate(stamp)) return size;
+		stamp = lock.readLock();
+		try{
+			return tree.size();
+		}
+		finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return size() == 0;
+	}
+
+	/**
+	 * public int[] keysInRange(int lo, int hi)
+	 *
+	 * Returns a sorted array of the keys in [lo, hi],
+	 * all read at one point in time.
+	 * time complexity: O(log n + m), m=number of keys returned
+	 */
+	public int[] keysInRange(int lo, int hi){
+		Scan scan = scan(lo, hi);
+		return Arrays.copyOf(scan.keys, scan.count);
+	}
+
+	/**
+	 * public String[] infoInRange(int lo, int hi)
+	 *
+	 * Returns an array of the info of the keys in [lo, hi],
+	 * sorted by their keys, all read at one point in time.
+	 * time complexity: O(log n + m), m=number of items returned
+	 */
+	public String[] infoInRange(int lo, int hi){
+		Scan scan = scan(lo, hi);
+		return Arrays.copyOf(scan.infos, scan.count);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		return keysInRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		return infoInRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * time complexity: O(log n), holds the write lock
+	 */
+	public int insert(int k, String i){
+		long stamp = lock.writeLock();
+		try{
+			return tree.insert(k, i);
+		}
+		finally{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * time complexity: O(log n), holds the write lock
+	 */
+	public int delete(int k){
+		long stamp = lock.writeLock();
+		try{
+			return tree.delete(k);
+		}
+		finally{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public WAVLTreeMetrics enableMetrics()
+	 *
+	 * starts counting searches, descents, promotions, demotions and rotations
+	 * and returns the metrics, the same object on later calls.
+	 * the metrics take the read lock while they walk the tree for its shape.
+	 */
+	public WAVLTreeMetrics enableMetrics(){
+		long stamp = lock.writeLock();
+		try{
+			metrics = tree.enableMetrics(lock.asReadLock());
+			return metrics;
+		}
+		finally{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// optimistic scan first, under the read lock if a writer interfered
+	private Scan scan(int lo, int hi){
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L){
+			//an in order walk over m keys takes at most 2m+2h steps
+			Scan scan = collect(lo, hi, 2L * tree.size() + 2 * MAX_DEPTH);
+			if (scan != null && lock.validate(stamp)) return scan;
+		}
+		stamp = lock.readLock();
+		try{
+			return collect(lo, hi, Long.MAX_VALUE);
+		}
+		finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+   /**
+	* collects the items in [lo, hi]: a descent to the ceiling of lo,
+	* then successors by parent pointers.
+	* returns null if it met a broken link or ran out of steps,
+	* which can only happen when a writer is changing the tree.
+	*/
+	private Scan collect(int lo, int hi, long steps){
+		Scan scan = new Scan();
+		if (lo > hi) return scan;
+		WAVLTree.WAVLNode node = tree.getRoot();
+		WAVLTree.WAVLNode first = null;
+		while (node != null && !node.isExternal()){
+			if (--steps < 0) return null;
+			int key = node.getKey();
+			if (lo == key){
+				first = node;
+				break;
+			}
+			if (lo < key){
+				first = node;
+				node = node.getLeft();
+			}
+			else node = node.getRight();
+		}
+		if (node == null) return null;
+		node = first;
+		while (node != null && node.getKey() <= hi){
+			scan.add(node.getKey(), node.getInfo());
+			WAVLTree.WAVLNode next = node.getRight();
+			if (next == null) return null;
+			if (!next.isExternal()){ //leftmost node of the right subtree
+				for (WAVLTree.WAVLNode left = next.getLeft(); left != null && !left.isExternal(); left = next.getLeft()){
+					if (--steps < 0) return null;
+					next = left;
+				}
+				if (next.getLeft() == null) return null;
+			}
+			else{ //first ancestor we are in the left subtree of
+				next = node;
+				WAVLTree.WAVLNode parent = next.getParent();
+				while (parent != null && parent.getRight() == next){
+					if (--steps < 0) return null;
+					next = parent;
+					parent = parent.getParent();
+				}
+				next = parent;
+			}
+			if (--steps < 0) return null;
+			node = next;
+		}
+		return scan;
+	}
+
+   /**
+	* keys and info read by one scan
+	*/
+	private static final class Scan{
+		private int[] keys = new int[16];
+		private String[] infos = new String[16];
+		private int count;
+
+		private void add(int key, String info){
+			if (count == keys.length){
+				keys = Arrays.copyOf(keys, count * 2);
+				infos = Arrays.copyOf(infos, count * 2);
+			}
+			keys[count] = key;
+			infos[count] = info;
+			count++;
+		}
+	}
+
+}
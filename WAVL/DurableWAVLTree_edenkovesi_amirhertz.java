@@ -0,0 +1,694 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableWAVLTree
+ *
+ * A thread safe WAVL tree (a ConcurrentWAVLTree) whose inserts and deletes survive crashes.
+ * Every insert or delete that changes the tree is appended to a write-ahead log in a directory,
+ * and returns only after the log was forced to the disk.
+ *
+ * Group commit: writers apply their change and append its record to a shared buffer under one lock,
+ * then the first writer to wait becomes the leader, writes everything buffered so far as one frame
+ * and forces it once, while the others wait for it (and append the next batch meanwhile).
+ * Opened without group commit, every change is written and forced on its own, holding the lock.
+ * A change is visible to readers as soon as it is applied, before it is durable.
+ *
+ * The directory holds log segments wal-G and snapshots snapshot-G, where snapshot-G has all records
+ * of the segments before G applied, and maybe some of G and later. Replaying a record sets or removes its key,
+ * so records already in the snapshot can be applied again. open loads the newest snapshot and replays
+ * the later segments, then starts a new segment. A frame is [payload length][CRC32 of the payload][records],
+ * a record is a type byte and the key, and for an insert the info as a varint length
+ * (0 for null, otherwise 1 + the UTF-8 length) and its UTF-8 bytes.
+ * A frame cut short by a crash fails its checksum and is cut off the log,
+ * it was never acknowledged.
+ * The lock file in the directory is held while the tree is open, so a second open of it fails.
+ *
+ * compact() starts a new segment, holding the lock, and then on a background thread copies the items
+ * COPY_CHUNK at a time (taking the lock for each chunk only), writes them as the next snapshot
+ * and deletes the files it replaces.
+ * It starts by itself on the background thread when a segment grows past COMPACT_THRESHOLD.
+ * One that fails is started again once the log grew another COMPACT_THRESHOLD,
+ * and close() throws the error of the last one if it failed.
+ * If a log write fails, the tree is left as it is in memory, and every later change throws.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class DurableWAVLTree implements Closeable {
+
+	private static final String LOG_PREFIX = "wal-";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String LOCK_FILE = "lock";
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final int FRAME_HEADER = 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long COMPACT_THRESHOLD = 64L << 20; //segment size that starts a compaction
+	private static final int COPY_CHUNK = 1 << 14; //items a compaction copies per hold of the lock
+
+	private final Path dir;
+	private final FileChannel lockFile; //holds the lock on the directory
+	private final WAVLTree items; //the tree guarded by tree, changed only holding lock
+	private final ConcurrentWAVLTree tree;
+	private final boolean groupCommit;
+
+	private final ReentrantLock lock = new ReentrantLock(); //orders changes in the tree and in the log
+	private final Condition flushed = lock.newCondition();
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "DurableWAVLTree compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private FileChannel log; //the current segment
+	private long generation; //of the current segment
+	private long logBytes; //written to the current segment
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE); //records not written yet
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE); //swapped with pending by the leader, null while it writes
+	private long appended; //number of records appended
+	private long durable; //number of records forced to the disk
+	private boolean flushing; //a leader is writing
+	private IOException failure; //the log write that failed, if one did
+	private boolean closed;
+	private CompletableFuture<Void> compaction; //the last one started
+	private long compactAt = COMPACT_THRESHOLD; //logBytes past which a writer starts a compaction
+
+	private DurableWAVLTree(Path dir, FileChannel lockFile, WAVLTree tree, boolean groupCommit, long generation) throws IOException{
+		this.dir = dir;
+		this.lockFile = lockFile;
+		this.items = tree;
+		this.tree = new ConcurrentWAVLTree(tree);
+		this.groupCommit = groupCommit;
+		this.generation = generation;
+		this.log = openSegment(generation);
+	}
+
+	/**
+	 * public static DurableWAVLTree open(Path dir) throws IOException
+	 *
+	 * opens the tree stored in dir with group commit, or an empty one if dir has none.
+	 * time complexity: O(n + the records in the log)
+	 */
+	public static DurableWAVLTree open(Path dir) throws IOException{
+		return open(dir, true);
+	}
+
+	/**
+	 * public static DurableWAVLTree open(Path dir, boolean groupCommit) throws IOException
+	 *
+	 * opens the tree stored in dir, or an empty one if dir has none:
+	 * loads the newest snapshot, replays the log segments after it and deletes older files.
+	 * throws IOException if a file is corrupt (other than a frame cut short at the end of the log),
+	 * or if dir is open in another DurableWAVLTree, in this process or another.
+	 * time complexity: O(n + the records in the log)
+	 */
+	public static DurableWAVLTree open(Path dir, boolean groupCommit) throws IOException{
+		Files.createDirectories(dir);
+		FileChannel lockFile = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try{
+			FileLock held;
+			try{
+				held = lockFile.tryLock();
+			}
+			catch (OverlappingFileLockException e){
+				held = null; //locked by this process
+			}
+			if (held == null) throw new IOException(dir + " is open in another DurableWAVLTree");
+			return open(dir, lockFile, groupCommit);
+		}
+		catch (IOException | RuntimeException e){
+			lockFile.close();
+			throw e;
+		}
+	}
+
+	// opens dir, whose lock is held through lockFile
+	private static DurableWAVLTree open(Path dir, FileChannel lockFile, boolean groupCommit) throws IOException{
+		long snapshot = -1;
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)){
+			for (Path file : files){
+				String name = file.getFileName().toString();
+				if (name.endsWith(".tmp")) Files.delete(file); //a snapshot that was not finished
+				else if (generationOf(name, SNAPSHOT_PREFIX) >= 0) snapshot = Math.max(snapshot, generationOf(name, SNAPSHOT_PREFIX));
+				else if (generationOf(name, LOG_PREFIX) >= 0) segments.add(generationOf(name, LOG_PREFIX));
+			}
+		}
+		Collections.sort(segments);
+		WAVLTree tree = snapshot >= 0 ? WAVLTree.loadSnapshot(dir.resolve(SNAPSHOT_PREFIX + snapshot)) : new WAVLTree();
+		long next = Math.max(snapshot, 0);
+		for (int j = 0; j < segments.size(); j++){
+			long segment = segments.get(j);
+			if (segment < snapshot) continue;
+			replay(tree, dir.resolve(LOG_PREFIX + segment), j == segments.size() - 1);
+			next = segment + 1;
+		}
+		deleteBefore(dir, snapshot);
+		DurableWAVLTree durable = new DurableWAVLTree(dir, lockFile, tree, groupCommit, next);
+		syncDirectory(dir);
+		return durable;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * time complexity: O(log n), lock free unless a writer is active
+	 */
+	public String search(int k){
+		return tree.search(k);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String min(){
+		return tree.min();
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String max(){
+		return tree.max();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return tree.size();
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return tree.empty();
+	}
+
+	/**
+	 * public int[] keysInRange(int lo, int hi)
+	 *
+	 * Returns the keys k with lo <= k <= hi, in ascending order.
+	 * time complexity: O(log n + k), k=number of keys returned
+	 */
+	public int[] keysInRange(int lo, int hi){
+		return tree.keysInRange(lo, hi);
+	}
+
+	/**
+	 * public String[] infoInRange(int lo, int hi)
+	 *
+	 * Returns the info of the keys k with lo <= k <= hi, sorted by their keys.
+	 * time complexity: O(log n + k), k=number of items returned
+	 */
+	public String[] infoInRange(int lo, int hi){
+		return tree.infoInRange(lo, hi);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		return tree.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		return tree.infoToArray();
+	}
+
+	/**
+	 * public int insert(int k, String i) throws IOException
+	 *
+	 * inserts an item with key k and info i to the WAVL tree, and returns once it is in the log on the disk.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree, nothing is logged then.
+	 * time complexity: O(log n) and a share of one force of the log
+	 */
+	public int insert(int k, String i) throws IOException{
+		byte[] info = i == null ? null : i.getBytes(StandardCharsets.UTF_8);
+		long record;
+		int balanceops;
+		lock.lock();
+		try{
+			checkWritable();
+			balanceops = tree.insert(k, i);
+			if (balanceops == -1) return -1;
+			record = append(INSERT, k, info);
+			if (!groupCommit) flush(false);
+		}
+		finally{
+			lock.unlock();
+		}
+		commit(record);
+		return balanceops;
+	}
+
+	/**
+	 * public int delete(int k) throws IOException
+	 *
+	 * deletes an item with key k from the tree, if it is there, and returns once that is in the log on the disk.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree, nothing is logged then.
+	 * time complexity: O(log n) and a share of one force of the log
+	 */
+	public int delete(int k) throws IOException{
+		long record;
+		int balanceops;
+		lock.lock();
+		try{
+			checkWritable();
+			balanceops = tree.delete(k);
+			if (balanceops == -1) return -1;
+			record = append(DELETE, k, null);
+			if (!groupCommit) flush(false);
+		}
+		finally{
+			lock.unlock();
+		}
+		commit(record);
+		return balanceops;
+	}
+
+	/**
+	 * public CompletableFuture<Void> compact() throws IOException
+	 *
+	 * starts a new log segment, holding the lock, then copies the items and writes them as a snapshot
+	 * in the background and deletes the segments and snapshot it replaces.
+	 * writers wait only while a segment starts and while a chunk of COPY_CHUNK items is copied, readers do not.
+	 * returns the background part, which completes with an UncheckedIOException if it fails,
+	 * or the one already running.
+	 * time complexity: O(1) and a force of the log holding the lock, O(n log n) in the background
+	 */
+	public CompletableFuture<Void> compact() throws IOException{
+		lock.lock();
+		try{
+			checkWritable();
+			if (compaction != null && !compaction.isDone()) return compaction;
+			long next = startSegment();
+			compaction = CompletableFuture.runAsync(() -> writeSnapshot(next), compactor);
+			return compaction;
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	// the compaction started by a writer whose segment grew past COMPACT_THRESHOLD, on the compactor thread
+	private void compactInBackground(){
+		long next;
+		lock.lock();
+		try{
+			if (closed || failure != null) return;
+			next = startSegment();
+		}
+		catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+		finally{
+			lock.unlock();
+		}
+		writeSnapshot(next);
+	}
+
+	// writes the buffered records to the current segment, starts the next one and returns its generation. holds the lock
+	private long startSegment() throws IOException{
+		while (flushing) flushed.awaitUninterruptibly();
+		if (pending.position() > 0) flush(false); //the old segment gets all of its records
+		long next = generation + 1;
+		FileChannel segment = openSegment(next);
+		syncDirectory(dir);
+		log.close();
+		log = segment;
+		generation = next;
+		logBytes = 0;
+		compactAt = COMPACT_THRESHOLD;
+		return next;
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * writes what is left in the buffer, closes the log, waits for a running compaction
+	 * and releases the directory. throws the error of the last compaction, if it failed.
+	 * the tree can still be read afterwards, but not changed.
+	 */
+	@Override
+	public void close() throws IOException{
+		CompletableFuture<Void> running;
+		lock.lock();
+		try{
+			if (closed) return;
+			while (flushing) flushed.awaitUninterruptibly();
+			try{
+				if (pending.position() > 0 && failure == null) flush(false);
+			}
+			finally{
+				closed = true;
+				log.close();
+			}
+			running = compaction;
+		}
+		finally{
+			lock.unlock();
+		}
+		compactor.shutdown();
+		try{
+			if (running != null) running.join();
+		}
+		catch (CompletionException e){
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+		finally{
+			lockFile.close(); //releases the lock
+		}
+	}
+
+	private void checkWritable() throws IOException{
+		if (closed) throw new IllegalStateException("the tree is closed");
+		if (failure != null) throw new IOException("an earlier log write failed", failure);
+	}
+
+	// adds a record to the buffer, returns its number. holds the lock
+	private long append(byte type, int k, byte[] info){
+		int length = 1 + 4 + (type == INSERT ? 5 + (info == null ? 0 : info.length) : 0);
+		if (pending.remaining() < length){
+			int capacity = Math.max(pending.capacity() * 2, pending.position() + length);
+			ByteBuffer larger = ByteBuffer.allocate(capacity);
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		pending.put(type).putInt(k);
+		if (type == INSERT){
+			putVarint(pending, info == null ? 0 : info.length + 1L);
+			if (info != null) pending.put(info);
+		}
+		return ++appended;
+	}
+
+	/**
+	 * returns once record is on the disk, writing it (and the records appended with it) if no one else is.
+	 * then starts a compaction on the compactor thread if the segment is past compactAt:
+	 * the record is committed by then, so nothing the compaction does may fail this call.
+	 * compactAt moves a COMPACT_THRESHOLD further, so a compaction that fails before it starts a new segment
+	 * is tried again only after that much more log, and one that fails later once the new segment is as large.
+	 */
+	private void commit(long record) throws IOException{
+		lock.lock();
+		try{
+			awaitDurable(record);
+			if (logBytes > compactAt && !closed && (compaction == null || compaction.isDone())){
+				compactAt = logBytes + COMPACT_THRESHOLD;
+				compaction = CompletableFuture.runAsync(this::compactInBackground, compactor);
+			}
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * writes the buffered records as one frame and forces the log. holds the lock,
+	 * but releases it while writing if release is true, so other writers can fill the next batch.
+	 */
+	private void flush(boolean release) throws IOException{
+		flushing = true;
+		ByteBuffer batch = pending;
+		pending = spare;
+		spare = null;
+		long last = appended;
+		FileChannel channel = log;
+		IOException error = null;
+		if (release) lock.unlock();
+		try{
+			batch.flip();
+			CRC32 crc = new CRC32();
+			crc.update(batch.duplicate());
+			ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+			header.putInt(batch.remaining()).putInt((int) crc.getValue()).flip();
+			ByteBuffer[] frame = { header, batch };
+			while (batch.hasRemaining()) channel.write(frame);
+			channel.force(false);
+		}
+		catch (IOException e){
+			error = e;
+		}
+		finally{
+			if (release) lock.lock();
+		}
+		logBytes += FRAME_HEADER + batch.limit();
+		batch.clear();
+		spare = batch;
+		flushing = false;
+		if (error != null) failure = error;
+		else durable = last;
+		flushed.signalAll();
+		if (error != null) throw error;
+	}
+
+	// returns once the records up to record are on the disk. holds the lock
+	private void awaitDurable(long record) throws IOException{
+		while (durable < record){
+			if (failure != null) throw new IOException("the log write failed", failure);
+			if (flushing) flushed.awaitUninterruptibly();
+			else flush(true);
+		}
+	}
+
+	/**
+	 * the background part of compact: copies the items in chunks, letting writers in between,
+	 * and writes them as snapshot-generation. the copy has every record before the segment generation,
+	 * and for a key changed while copying, either its old or its new item.
+	 * it is written only once every record it may have seen is on the disk, so a replay of the log after it
+	 * ends at the same tree.
+	 */
+	private void writeSnapshot(long generation){
+		int[] keys = new int[COPY_CHUNK];
+		String[] infos = new String[COPY_CHUNK];
+		int count = 0;
+		long from = Integer.MIN_VALUE; //the smallest key not copied yet
+		while (from <= Integer.MAX_VALUE){
+			lock.lock();
+			try{
+				WAVLTree.WAVLIterator range = items.range((int) from, Integer.MAX_VALUE);
+				for (int j = 0; j < COPY_CHUNK && range.hasNext(); j++){
+					if (count == keys.length){
+						keys = Arrays.copyOf(keys, 2 * count);
+						infos = Arrays.copyOf(infos, 2 * count);
+					}
+					keys[count] = range.nextInt();
+					infos[count] = range.info();
+					from = keys[count++] + 1L;
+				}
+				if (!range.hasNext()) from = (long) Integer.MAX_VALUE + 1;
+			}
+			finally{
+				lock.unlock();
+			}
+		}
+		try{
+			lock.lock();
+			try{
+				awaitDurable(appended);
+			}
+			finally{
+				lock.unlock();
+			}
+			WAVLTree.fromSorted(Arrays.copyOf(keys, count), Arrays.copyOf(infos, count)).writeSnapshot(dir.resolve(SNAPSHOT_PREFIX + generation));
+			syncDirectory(dir);
+			deleteBefore(dir, generation);
+		}
+		catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private FileChannel openSegment(long generation) throws IOException{
+		return FileChannel.open(dir.resolve(LOG_PREFIX + generation), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * applies the records of a log segment to tree, reading it a frame at a time.
+	 * a bad frame at the end of the last segment was cut short by a crash and is truncated away,
+	 * anywhere else it is corruption.
+	 */
+	private static void replay(WAVLTree tree, Path path, boolean last) throws IOException{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			long size = channel.size();
+			long position = 0;
+			ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+			ByteBuffer payload = ByteBuffer.allocate(BUFFER_SIZE);
+			while (position < size){
+				payload = frame(channel, position, size, header, payload);
+				if (payload == null){
+					if (!last) throw new IOException("corrupt frame at " + position + " in " + path);
+					channel.truncate(position);
+					channel.force(true);
+					return;
+				}
+				position += FRAME_HEADER + payload.limit();
+				try{
+					while (payload.hasRemaining()) apply(tree, payload);
+				}
+				catch (RuntimeException e){
+					throw new IOException("corrupt record in " + path, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * reads the payload of the frame at position into payload, or into a larger buffer if it does not fit,
+	 * and returns that buffer ready to read. returns null if the frame is cut short or corrupt.
+	 */
+	private static ByteBuffer frame(FileChannel channel, long position, long size, ByteBuffer header, ByteBuffer payload) throws IOException{
+		if (size - position < FRAME_HEADER) return null;
+		header.clear();
+		readFully(channel, header, position);
+		header.flip();
+		int length = header.getInt();
+		int checksum = header.getInt();
+		if (length < 0 || length > size - position - FRAME_HEADER) return null;
+		if (payload.capacity() < length) payload = ByteBuffer.allocate(length);
+		payload.clear();
+		payload.limit(length);
+		readFully(channel, payload, position + FRAME_HEADER);
+		payload.flip();
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != checksum) return null;
+		return payload;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		while (buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if (read < 0) throw new IOException("log segment shrank while replaying it");
+			position += read;
+		}
+	}
+
+	// applies one record. it may already be in the snapshot, so an insert replaces the item and a delete may miss
+	private static void apply(WAVLTree tree, ByteBuffer payload){
+		byte type = payload.get();
+		int k = payload.getInt();
+		if (type == DELETE){
+			tree.delete(k);
+			return;
+		}
+		if (type != INSERT) throw new IllegalStateException("unknown record type " + type);
+		long length = getVarint(payload);
+		String info = null;
+		if (length > 0){
+			byte[] bytes = new byte[Math.toIntExact(length - 1)];
+			payload.get(bytes);
+			info = new String(bytes, StandardCharsets.UTF_8);
+		}
+		if (tree.insert(k, info) == -1){
+			tree.delete(k);
+			tree.insert(k, info);
+		}
+	}
+
+	// deletes the snapshots and log segments of generations before generation
+	private static void deleteBefore(Path dir, long generation) throws IOException{
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)){
+			for (Path file : files){
+				String name = file.getFileName().toString();
+				long g = Math.max(generationOf(name, SNAPSHOT_PREFIX), generationOf(name, LOG_PREFIX));
+				if (g >= 0 && g < generation) Files.delete(file);
+			}
+		}
+	}
+
+	// the generation in a file name prefix + digits, -1 if the name is not like that
+	private static long generationOf(String name, String prefix){
+		if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() > prefix.length() + 18) return -1;
+		for (int j = prefix.length(); j < name.length(); j++) if (!Character.isDigit(name.charAt(j))) return -1;
+		return Long.parseLong(name.substring(prefix.length()));
+	}
+
+	// makes created, renamed and deleted files durable
+	private static void syncDirectory(Path dir){
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)){
+			channel.force(true);
+		}
+		catch (IOException e){
+			//not every platform can open or force a directory, there the file system orders it
+		}
+	}
+
+	// unsigned LEB128, as in WAVLTree snapshots
+	private static void putVarint(ByteBuffer buffer, long value){
+		while (value >= 0x80){
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long getVarint(ByteBuffer buffer){
+		long value = 0;
+		for (int shift = 0; ; shift += 7){
+			if (shift > 35) throw new IllegalStateException("varint too long");
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+	}
+}
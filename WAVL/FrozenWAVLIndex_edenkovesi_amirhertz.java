@@ -0,0 +1,193 @@
+import java.util.PrimitiveIterator;
+
+/**
+ *
+ * FrozenWAVLIndex
+ *
+ * An immutable copy of a WAVLTree, made by WAVLTree.freeze(), laid out for lookups.
+ * The keys are stored in Eytzinger (BFS) order in one int array: the root in slot 1,
+ * the children of slot i in slots 2i and 2i+1, and the info in a parallel array.
+ * A search walks the implicit tree with no pointers and no branch on the comparison,
+ * and since slot i's descendants four levels down are the 16 consecutive slots from 16i,
+ * the lower levels of a search touch few cache lines.
+ * Positions returned by floor and ceiling are slots, 0 means there is none.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class FrozenWAVLIndex {
+
+	private final int[] keys; //keys[0] is unused
+	private final String[] infos;
+	private final int size;
+
+	/**
+	 * builds the index of the next n items of a sorted stream, read in order
+	 */
+	FrozenWAVLIndex(int n, WAVLTree.WAVLIterator items){
+		if (n >= 1 << 30) throw new IllegalArgumentException("too many items to freeze: " + n); //a descent ends at i <= 2n+1, which must not overflow
+		this.size = n;
+		this.keys = new int[n + 1];
+		this.infos = new String[n + 1];
+		fill(1, items);
+	}
+
+	// in-order over the implicit tree rooted at slot i: the items arrive sorted
+	private void fill(int i, WAVLTree.WAVLIterator items){
+		if (i > size) return;
+		fill(2 * i, items);
+		keys[i] = items.nextInt();
+		infos[i] = items.info();
+		fill(2 * i + 1, items);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the index.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the index is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return size == 0;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the index
+	 * otherwise, returns null
+	 * time complexity: O(log n)
+	 */
+	public String search(int k){
+		int slot = ceiling(k);
+		return slot != 0 && keys[slot] == k ? infos[slot] : null;
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 *
+	 * returns true if and only if the index has an item with key k
+	 * time complexity: O(log n)
+	 */
+	public boolean contains(int k){
+		int slot = ceiling(k);
+		return slot != 0 && keys[slot] == k;
+	}
+
+	/**
+	 * public int ceiling(int k)
+	 *
+	 * returns the slot of the smallest key >= k, or 0 if there is none.
+	 * descends to the bottom without branching on the keys: every step appends one bit (go right)
+	 * to i, and the answer is the last node where the search went left,
+	 * found by stripping the trailing right turns and that left turn.
+	 * time complexity: O(log n)
+	 */
+	public int ceiling(int k){
+		int i = 1;
+		while (i <= size) i = 2 * i + (keys[i] < k ? 1 : 0);
+		return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+	}
+
+	/**
+	 * public int floor(int k)
+	 *
+	 * returns the slot of the largest key <= k, or 0 if there is none.
+	 * the same descent, answered by the last node where the search went right.
+	 * time complexity: O(log n)
+	 */
+	public int floor(int k){
+		int i = 1;
+		while (i <= size) i = 2 * i + (keys[i] <= k ? 1 : 0);
+		return i >>> (Integer.numberOfTrailingZeros(i) + 1);
+	}
+
+	/**
+	 * public int keyAt(int slot)
+	 *
+	 * returns the key in slot, a slot returned by floor or ceiling (not 0).
+	 * time complexity: O(1)
+	 */
+	public int keyAt(int slot){
+		if (slot < 1 || slot > size) throw new IndexOutOfBoundsException("slot " + slot);
+		return keys[slot];
+	}
+
+	/**
+	 * public String infoAt(int slot)
+	 *
+	 * returns the info in slot, a slot returned by floor or ceiling (not 0).
+	 * time complexity: O(1)
+	 */
+	public String infoAt(int slot){
+		if (slot < 1 || slot > size) throw new IndexOutOfBoundsException("slot " + slot);
+		return infos[slot];
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the index,
+	 * or an empty array if the index is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		int[] arr = new int[size];
+		int j = 0;
+		for (PrimitiveIterator.OfInt it = slots(); it.hasNext(); ) arr[j++] = keys[it.nextInt()];
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the index,
+	 * sorted by their respective keys,
+	 * or an empty array if the index is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		String[] arr = new String[size];
+		int j = 0;
+		for (PrimitiveIterator.OfInt it = slots(); it.hasNext(); ) arr[j++] = infos[it.nextInt()];
+		return arr;
+	}
+
+	/**
+	 * the slots in key order: the in-order walk of the implicit tree,
+	 * from the leftmost slot, moving to the successor of each slot.
+	 */
+	private PrimitiveIterator.OfInt slots(){
+		return new PrimitiveIterator.OfInt(){
+			private int next = size == 0 ? 0 : leftmost(1);
+
+			public boolean hasNext(){
+				return next != 0;
+			}
+
+			public int nextInt(){
+				int slot = next;
+				if (2 * slot + 1 <= size) next = leftmost(2 * slot + 1);
+				else next = slot >>> (Integer.numberOfTrailingZeros(~slot) + 1); //first ancestor we are left of
+				return slot;
+			}
+		};
+	}
+
+	private int leftmost(int i){
+		while (2 * i <= size) i = 2 * i;
+		return i;
+	}
+}
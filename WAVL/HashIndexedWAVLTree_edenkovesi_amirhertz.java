@@ -0,0 +1,331 @@
+/**
+ *
+ * HashIndexedWAVLTree
+ *
+ * A WAVL tree with distinct integer keys and info, and a hash index next to it.
+ * The WAVLTree keeps the order (min, max, floor, ceiling, select, rank, ranges),
+ * and a primitive open addressing table from key to info answers search in O(1) expected,
+ * without walking the tree. insert and delete update both.
+ *
+ * The table maps keys to infos, not to nodes: delete swaps items between nodes,
+ * so a node does not keep its key, while the info of a key never changes.
+ * It is linear probing over parallel int[] and String[] arrays, at most 3/4 full,
+ * removal shifts the following entries back instead of leaving tombstones.
+ * All ints are valid keys, so key 0 marks a free slot and the item with key 0 is kept aside.
+ *
+ * Footprint (64-bit JVM, compressed oops): 8 bytes per table slot, 1.33 to 2.67 slots per key,
+ * so 11 to 22 bytes per key on top of the WAVLTree.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class HashIndexedWAVLTree {
+
+	private static final int FREE = 0; //the key of a free slot
+	private static final int INITIAL_CAPACITY = 16; //a power of 2
+
+	private final WAVLTree tree = new WAVLTree();
+
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private String[] infos = new String[INITIAL_CAPACITY];
+	private int mask = INITIAL_CAPACITY - 1;
+	private int count; //items in the table, not counting key 0
+	private boolean hasZero; //whether key 0 is in the tree
+	private String zeroInfo;
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * time complexity: O(1) expected
+	 */
+	public String search(int k){
+		if (k == FREE) return zeroInfo;
+		for (int slot = slot(k); ; slot = (slot + 1) & mask){
+			int key = keys[slot];
+			if (key == k) return infos[slot];
+			if (key == FREE) return null;
+		}
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 *
+	 * returns true if and only if the tree has an item with key k
+	 * time complexity: O(1) expected
+	 */
+	public boolean contains(int k){
+		if (k == FREE) return hasZero;
+		return find(k) >= 0;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree and the index.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * time complexity: O(log n)
+	 */
+	public int insert(int k, String i){
+		int balanceops = tree.insert(k, i);
+		if (balanceops != -1) index(k, i);
+		return balanceops;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree and the index, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * time complexity: O(log n)
+	 */
+	public int delete(int k){
+		if (!contains(k)) return -1; //misses stay O(1)
+		unindex(k);
+		return tree.delete(k);
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode pollFirst()
+	 *
+	 * removes the item with the smallest key, and returns it as a node outside the tree,
+	 * or null if the tree is empty.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode pollFirst(){
+		WAVLTree.WAVLNode item = tree.pollFirst();
+		if (item != null) unindex(item.getKey());
+		return item;
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode pollLast()
+	 *
+	 * removes the item with the largest key, and returns it as a node outside the tree,
+	 * or null if the tree is empty.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode pollLast(){
+		WAVLTree.WAVLNode item = tree.pollLast();
+		if (item != null) unindex(item.getKey());
+		return item;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String min(){
+		return tree.min();
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public String max(){
+		return tree.max();
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode floor(int k)
+	 *
+	 * returns the item with the largest key <= k as a new node outside the tree, or null if there is none.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode floor(int k){
+		return tree.floor(k);
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode ceiling(int k)
+	 *
+	 * returns the item with the smallest key >= k as a new node outside the tree, or null if there is none.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode ceiling(int k){
+		return tree.ceiling(k);
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode lower(int k)
+	 *
+	 * returns the item with the largest key < k as a new node outside the tree, or null if there is none.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode lower(int k){
+		return tree.lower(k);
+	}
+
+	/**
+	 * public WAVLTree.WAVLNode higher(int k)
+	 *
+	 * returns the item with the smallest key > k as a new node outside the tree, or null if there is none.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree.WAVLNode higher(int k){
+		return tree.higher(k);
+	}
+
+	/**
+	 * public int select(int i)
+	 *
+	 * returns the key of the i-th smallest item (0-based).
+	 * time complexity: O(log n)
+	 */
+	public int select(int i){
+		return tree.select(i);
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * returns the number of items with a key smaller than k.
+	 * time complexity: O(log n)
+	 */
+	public int rank(int k){
+		return tree.rank(k);
+	}
+
+	/**
+	 * public WAVLTree.WAVLIterator range(int lo, int hi)
+	 *
+	 * returns an iterator over the items with lo <= key <= hi, in increasing key order.
+	 * the tree must not be changed while it is used.
+	 * time complexity: O(log n) to create, O(1) amortized per item
+	 */
+	public WAVLTree.WAVLIterator range(int lo, int hi){
+		return tree.range(lo, hi);
+	}
+
+	/**
+	 * public WAVLTree.WAVLIterator iterator()
+	 *
+	 * returns an iterator over all items, in increasing key order.
+	 * the tree must not be changed while it is used.
+	 * time complexity: O(1) to create, O(1) amortized per item
+	 */
+	public WAVLTree.WAVLIterator iterator(){
+		return tree.iterator();
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		return tree.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		return tree.infoToArray();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return tree.size();
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return tree.empty();
+	}
+
+	// the home slot of key k: Fibonacci hashing, the high bits of k times 2^32/phi
+	private int slot(int k){
+		return (k * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+	}
+
+	// returns the slot of key k (not 0), or -1 if it is not in the table
+	private int find(int k){
+		for (int slot = slot(k); ; slot = (slot + 1) & mask){
+			int key = keys[slot];
+			if (key == k) return slot;
+			if (key == FREE) return -1;
+		}
+	}
+
+	// adds key k, which is not in the table
+	private void index(int k, String i){
+		if (k == FREE){
+			hasZero = true;
+			zeroInfo = i;
+			return;
+		}
+		if (4 * (count + 1) > 3 * keys.length) rehash(2 * keys.length);
+		int slot = slot(k);
+		while (keys[slot] != FREE) slot = (slot + 1) & mask;
+		keys[slot] = k;
+		infos[slot] = i;
+		count++;
+	}
+
+	// removes key k, which is in the table, and shifts back the entries that probed past its slot
+	private void unindex(int k){
+		if (k == FREE){
+			hasZero = false;
+			zeroInfo = null;
+			return;
+		}
+		int hole = find(k);
+		for (int slot = (hole + 1) & mask; keys[slot] != FREE; slot = (slot + 1) & mask){
+			int home = slot(keys[slot]);
+			//the entry may move to the hole unless its home is cyclically in (hole, slot]
+			if (((slot - home) & mask) >= ((slot - hole) & mask)){
+				keys[hole] = keys[slot];
+				infos[hole] = infos[slot];
+				hole = slot;
+			}
+		}
+		keys[hole] = FREE;
+		infos[hole] = null;
+		count--;
+	}
+
+	private void rehash(int capacity){
+		int[] oldKeys = keys;
+		String[] oldInfos = infos;
+		keys = new int[capacity];
+		infos = new String[capacity];
+		mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++){
+			if (oldKeys[j] == FREE) continue;
+			int slot = slot(oldKeys[j]);
+			while (keys[slot] != FREE) slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[j];
+			infos[slot] = oldInfos[j];
+		}
+	}
+}
@@ -0,0 +1,200 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * InfoArena
+ *
+ * Info Strings stored UTF-8 encoded, back to back, in one growable byte[].
+ * An info is referred to by a long handle instead of a String object:
+ * the offset in the high 32 bits, the length in the low 31 bits,
+ * and bit 31 set if all its bytes are ASCII. NULL stands for a null info.
+ *
+ * The arena only appends. Growing and compacting copy into a new array,
+ * so bytes() and chars() views handed out earlier keep seeing the bytes they were made over.
+ * Strings with unpaired surrogates are stored with '?' in their place, as String.getBytes does.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class InfoArena {
+
+	static final long NULL = -1L;
+
+	private static final long ASCII = 1L << 31;
+	private static final int LENGTH_MASK = Integer.MAX_VALUE;
+	private static final int INITIAL_CAPACITY = 256;
+
+	private byte[] bytes;
+	private int used; //bytes appended so far
+	private long garbage; //bytes of freed infos, reclaimed by compact
+
+	InfoArena(){
+		this.bytes = new byte[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * appends s and returns its handle
+	 * time complexity: O(length of s) amortized
+	 */
+	long put(String s){
+		if (s == null) return NULL;
+		int n = s.length();
+		ensure(n);
+		int offset = used;
+		for (int j = 0; j < n; j++){
+			char c = s.charAt(j);
+			if (c >= 0x80){ //not ASCII, let the JDK encode it
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				ensure(utf8.length);
+				System.arraycopy(utf8, 0, bytes, offset, utf8.length);
+				used = offset + utf8.length;
+				return handle(offset, utf8.length, false);
+			}
+			bytes[offset + j] = (byte) c;
+		}
+		used = offset + n;
+		return handle(offset, n, true);
+	}
+
+	/**
+	 * marks the bytes of handle as reclaimable by the next compact
+	 */
+	void free(long handle){
+		if (handle != NULL) garbage += length(handle);
+	}
+
+	/**
+	 * returns the info of handle as a new String
+	 */
+	String string(long handle){
+		if (handle == NULL) return null;
+		return new String(bytes, offset(handle), length(handle),
+				isAscii(handle) ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * returns a read-only view of the UTF-8 bytes of handle, without copying
+	 */
+	ByteBuffer bytes(long handle){
+		if (handle == NULL) return null;
+		return ByteBuffer.wrap(bytes, offset(handle), length(handle)).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * returns the info of handle as a CharSequence. ASCII infos are read in place,
+	 * any other info is decoded once, on first use.
+	 */
+	CharSequence chars(long handle){
+		if (handle == NULL) return null;
+		return new Chars(bytes, offset(handle), length(handle), isAscii(handle));
+	}
+
+	/**
+	 * returns the number of bytes held by the arena, live or not
+	 */
+	int usedBytes(){
+		return used;
+	}
+
+	/**
+	 * returns true if at least half of the arena, and more than its initial size, is freed bytes
+	 */
+	boolean shouldCompact(){
+		return garbage > INITIAL_CAPACITY && 2 * garbage > used;
+	}
+
+	/**
+	 * copies the infos of handles[0..count) that are not NULL to a new array of just their size,
+	 * and rewrites those handles. every live handle must be in handles, exactly once.
+	 * time complexity: O(count + live bytes)
+	 */
+	void compact(long[] handles, int count){
+		byte[] compacted = new byte[Math.max(INITIAL_CAPACITY, (int) (used - garbage))];
+		int offset = 0;
+		for (int j = 0; j < count; j++){
+			long handle = handles[j];
+			if (handle == NULL) continue;
+			int length = length(handle);
+			System.arraycopy(bytes, offset(handle), compacted, offset, length);
+			handles[j] = handle(offset, length, isAscii(handle));
+			offset += length;
+		}
+		bytes = compacted;
+		used = offset;
+		garbage = 0;
+	}
+
+	private void ensure(int extra){
+		if (used + extra <= bytes.length) return;
+		long capacity = Math.max((long) used + extra, bytes.length + (bytes.length >> 1) + 1L);
+		if (capacity > Integer.MAX_VALUE - 8){
+			if ((long) used + extra > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("info arena is full");
+			capacity = Integer.MAX_VALUE - 8;
+		}
+		bytes = Arrays.copyOf(bytes, (int) capacity);
+	}
+
+	private static long handle(int offset, int length, boolean ascii){
+		return ((long) offset << 32) | (ascii ? ASCII : 0) | length;
+	}
+
+	private static int offset(long handle){
+		return (int) (handle >>> 32);
+	}
+
+	private static int length(long handle){
+		return (int) handle & LENGTH_MASK;
+	}
+
+	private static boolean isAscii(long handle){
+		return (handle & ASCII) != 0;
+	}
+
+   /**
+	* a CharSequence over an info in the arena
+	*/
+	private static final class Chars implements CharSequence {
+
+		private final byte[] bytes;
+		private final int offset;
+		private final int length; //in bytes
+		private final boolean ascii;
+		private String decoded; //the non ASCII info, decoded on first use
+
+		Chars(byte[] bytes, int offset, int length, boolean ascii){
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+			this.ascii = ascii;
+		}
+
+		public int length(){
+			return ascii ? length : decoded().length();
+		}
+
+		public char charAt(int index){
+			if (!ascii) return decoded().charAt(index);
+			if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index);
+			return (char) bytes[offset + index];
+		}
+
+		public CharSequence subSequence(int start, int end){
+			if (!ascii) return decoded().subSequence(start, end);
+			if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("[" + start + ", " + end + ")");
+			return new Chars(bytes, offset + start, end - start, true);
+		}
+
+		public String toString(){
+			return ascii ? new String(bytes, offset, length, StandardCharsets.ISO_8859_1) : decoded();
+		}
+
+		private String decoded(){
+			if (decoded == null) decoded = new String(bytes, offset, length, StandardCharsets.UTF_8);
+			return decoded;
+		}
+	}
+}
@@ -0,0 +1,530 @@
+import java.util.Arrays;
+
+/**
+ *
+ * LongObjWAVLTree
+ *
+ * A WAVL Tree with distinct long keys and values of type V,
+ * hand-specialized from ArrayWAVLTree so keys are never boxed:
+ * nodes live in parallel primitive arrays, index EXT (-1) is the shared external node.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class LongObjWAVLTree<V> {
+
+	private static final int EXT = -1; //the shared external node
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] left;
+	private int[] right;
+	private int[] parent; //also the next pointer of the free-list
+	private int[] rank;
+	private long[] key;
+	private Object[] info;
+
+	private int root;
+	private int size; //in order to return size in O(1)
+	private int used; //number of slots ever handed out (high-water mark)
+	private int freeHead; //first free slot, EXT if the free-list is empty
+	private int balanceops; //global variable,counting balance operations
+	private int minFP; //finger pointer to minimal key node.in order to return min in O(1)
+	private int maxFP; //finger pointer to maximal key node. to return max in O(1)
+
+   /**
+	* create an empty WAVL
+	*/
+	public LongObjWAVLTree(){
+		this(INITIAL_CAPACITY);
+	}
+
+   /**
+	* create an empty WAVL
+	* with room for capacity nodes before the arrays grow
+	*/
+	public LongObjWAVLTree(int capacity){
+		capacity = Math.max(capacity, 1);
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.parent = new int[capacity];
+		this.rank = new int[capacity];
+		this.key = new long[capacity];
+		this.info = new Object[capacity];
+		this.root = EXT;
+		this.size = 0;
+		this.used = 0;
+		this.freeHead = EXT;
+		minFP = EXT;
+		maxFP = EXT;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty() {
+		return root == EXT;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * public int capacity()
+	 *
+	 * Returns the number of node slots currently allocated.
+	 * time complexity: O(1)
+	 */
+	public int capacity(){
+		return this.key.length;
+	}
+
+	/**
+	 * public V search(long k)
+	 *
+	 * returns the value of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	public V search(long k){
+		int node = find(k);
+		return node == EXT ? null : value(node);
+	}
+
+	/**
+	 * public boolean contains(long k)
+	 *
+	 * returns true if and only if an item with key k exists in the tree,
+	 * also when its value is null
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	public boolean contains(long k){
+		return find(k) != EXT;
+	}
+
+	/**
+	 * returns the node with key k, or EXT if it is not in the tree
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	private int find(long k){
+		int node = root;
+		while (node != EXT && key[node] != k){
+			node = k < key[node] ? left[node] : right[node];
+		}
+		return node;
+	}
+
+   /**
+	* public V min()
+	*
+	* Returns the value of the item with the smallest key in the tree,
+	* or null if the tree is empty
+	* time complexity: O(1)
+	*/
+	public V min(){
+		if(empty()) return null;
+		return value(minFP);
+	}
+
+   /**
+	* public V max()
+	*
+	* Returns the value of the item with the largest key in the tree,
+	* or null if the tree is empty
+	* time complexity: O(1)
+	*/
+	public V max(){
+		if(empty()) return null;
+		return value(maxFP);
+	}
+
+   /**
+	* public long[] keysToArray()
+	*
+	* Returns a sorted array which contains all keys in the tree,
+	* or an empty array if the tree is empty.
+	* time complexity: O(n)
+	*/
+	public long[] keysToArray(){
+		long[] arr = new long[size];
+		int i = 0;
+		for (int node = minFP; node != EXT; node = successor(node)) arr[i++] = key[node];
+		return arr;
+	}
+
+   /**
+	* public Object[] infoToArray()
+	*
+	* Returns an array which contains all values in the tree,
+	* sorted by their respective keys,
+	* or an empty array if the tree is empty.
+	* time complexity: O(n)
+	*/
+	public Object[] infoToArray(){
+		Object[] arr = new Object[size];
+		int i = 0;
+		for (int node = minFP; node != EXT; node = successor(node)) arr[i++] = info[node];
+		return arr;
+	}
+
+   /**
+	* returns the in-order successor of node, or EXT if node is the maximum.
+	* walks up parent pointers, so it needs no stack.
+	* time complexity: O(1) amortized over a full in-order walk
+	*/
+	private int successor(int node){
+		if (right[node] != EXT){
+			node = right[node];
+			while (left[node] != EXT) node = left[node];
+			return node;
+		}
+		int p = parent[node];
+		while (p != EXT && node == right[p]){
+			node = p;
+			p = parent[p];
+		}
+		return p;
+	}
+
+   /**
+	* public int insert(long k, V i)
+	* inserts an item with key k and value i to the WAVL tree.
+	* the tree must remain valid (keep its invariants).
+	* returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	* returns -1 if an item with key k already exists in the tree.
+	* time complexity: O(log n), n=number of tree nodes
+	*/
+	public int insert(long k, V i) {
+		this.balanceops = 0;
+		int p = EXT;
+		int node = root;
+		while (node != EXT){
+			if (k == key[node]) return -1; //node already exists in the tree
+			p = node;
+			node = k < key[node] ? left[node] : right[node];
+		}
+		int newNode = allocate(k, i, p);
+		if (p == EXT) root = newNode; //new node is the root
+		else if (k < key[p]) left[p] = newNode;
+		else right[p] = newNode;
+		if (minFP == EXT || k < key[minFP]) minFP = newNode;
+		if (maxFP == EXT || k > key[maxFP]) maxFP = newNode;
+		size++;
+		balanceAfterInsertion(newNode);
+		return balanceops;
+	}
+
+   /**
+	* Balances the tree after insertion, going bottom-up from node.
+	* either rotates around node or promotes the node's parent, according to the situation
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterInsertion(int node){
+		int p = parent[node];
+		while (p != EXT && rank[p] == rank[node]){
+			if (node == left[p]){
+				//case 1 - promote
+				if (rank[p] - rankOf(right[p]) == 1){
+					promote(p);
+					node = p;
+					p = parent[p];
+					continue;
+				}
+				//case 2 - rotate right
+				if (rankOf(right[node]) < rankOf(left[node])){
+					demote(p);
+					rotateRight(node);
+				}
+				//case 3 - double rotate
+				else{
+					int axis = right[node];
+					demote(p);
+					demote(node);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+				}
+			}
+			// up to symmetry
+			else{
+				//case 1 - promote
+				if (rank[p] - rankOf(left[p]) == 1){
+					promote(p);
+					node = p;
+					p = parent[p];
+					continue;
+				}
+				//case 2 - rotate left
+				if (rankOf(left[node]) < rankOf(right[node])){
+					demote(p);
+					rotateLeft(node);
+				}
+				//case 3 - double rotate
+				else{
+					int axis = left[node];
+					demote(p);
+					demote(node);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+				}
+			}
+			return;
+		}
+	}
+
+   /**
+	* public int delete(long k)
+	*
+	* deletes an item with key k from the binary tree, if it is there;
+	* the tree must remain valid (keep its invariants).
+	* returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	* returns -1 if an item with key k was not found in the tree.
+	* time complexity: O(log n), n=number of tree nodes
+	*/
+	public int delete(long k){
+		balanceops = 0;
+		int node = find(k);
+		if (node == EXT) return -1;
+		//update minFP & maxFP, node has no left child if it is the minimum (no right child if maximum)
+		if (node == minFP) minFP = right[node] != EXT ? right[node] : parent[node];
+		if (node == maxFP) maxFP = left[node] != EXT ? left[node] : parent[node];
+		//node has two children - move the successor's item into node and remove the successor instead
+		if (left[node] != EXT && right[node] != EXT){
+			int succ = right[node];
+			while (left[succ] != EXT) succ = left[succ];
+			key[node] = key[succ];
+			info[node] = info[succ];
+			if (maxFP == succ) maxFP = node;
+			node = succ;
+		}
+		//node has at most one child, which is a leaf - splice it in node's place
+		int child = left[node] != EXT ? left[node] : right[node];
+		int p = parent[node];
+		if (child != EXT) parent[child] = p;
+		if (p == EXT) root = child;
+		else if (node == left[p]) left[p] = child;
+		else right[p] = child;
+		release(node);
+		size--;
+		if (p == EXT) return balanceops;
+		//not a legal leaf
+		if (left[p] == EXT && right[p] == EXT && rank[p] == 1){
+			demote(p);
+			child = p;
+			p = parent[p];
+		}
+		balanceAfterDeletion(child, p);
+		return balanceops;
+	}
+
+   /**
+	* Balances the tree after deletion op, going bottom-up from node (a child of p, possibly EXT).
+	* either rotates around node's sibling or demotes.
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterDeletion(int node, int p){
+		//finish rebalance when there is no 3-child
+		while (p != EXT && rank[p] - rankOf(node) == 3){
+			// node is right child
+			if (node == right[p]){
+				int brother = left[p];
+				//case 1
+				if (rank[p] - rank[brother] == 2){
+					demote(p);
+				}
+				//case 2
+				else if (rank[brother] - rankOf(left[brother]) == 2 && rank[brother] - rankOf(right[brother]) == 2){
+					demote(p);
+					demote(brother);
+				}
+				//case 3
+				else if (rank[brother] - rankOf(left[brother]) == 1){
+					rotateRight(brother);
+					promote(brother);
+					demote(p);
+					//not a legal leaf
+					if (left[p] == EXT && right[p] == EXT) demote(p);
+					return;
+				}
+				//case 4
+				else{
+					int axis = right[brother];
+					demote(p);
+					demote(p);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+					return;
+				}
+			}
+			// up to symmetry
+			else{
+				int brother = right[p];
+				//case 1
+				if (rank[p] - rank[brother] == 2){
+					demote(p);
+				}
+				//case 2
+				else if (rank[brother] - rankOf(left[brother]) == 2 && rank[brother] - rankOf(right[brother]) == 2){
+					demote(p);
+					demote(brother);
+				}
+				//case 3
+				else if (rank[brother] - rankOf(right[brother]) == 1){
+					rotateLeft(brother);
+					promote(brother);
+					demote(p);
+					//not a legal leaf
+					if (left[p] == EXT && right[p] == EXT) demote(p);
+					return;
+				}
+				//case 4
+				else{
+					int axis = left[brother];
+					demote(p);
+					demote(p);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+					return;
+				}
+			}
+			node = p;
+			p = parent[p];
+		}
+	}
+
+   /**
+	* returns the rank of node, -1 for the external node
+	*/
+	private int rankOf(int node){
+		return node == EXT ? -1 : rank[node];
+	}
+
+   /**
+	* Performs right rotation around node.
+	* @param node
+	*/
+	private void rotateRight(int node){
+		int p = parent[node];
+		int grandparent = parent[p];
+		replaceChild(grandparent, p, node);
+		int inner = right[node];
+		left[p] = inner;
+		if (inner != EXT) parent[inner] = p;
+		right[node] = p;
+		parent[p] = node;
+		parent[node] = grandparent;
+		balanceops++;
+	}
+
+   /**
+	* Performs left rotation around node.
+	* @param node
+	*/
+	private void rotateLeft(int node){
+		int p = parent[node];
+		int grandparent = parent[p];
+		replaceChild(grandparent, p, node);
+		int inner = left[node];
+		right[p] = inner;
+		if (inner != EXT) parent[inner] = p;
+		left[node] = p;
+		parent[p] = node;
+		parent[node] = grandparent;
+		balanceops++;
+	}
+
+   /**
+	* makes newChild take oldChild's place under p (or as the root when p is EXT)
+	*/
+	private void replaceChild(int p, int oldChild, int newChild){
+		if (p == EXT) root = newChild;
+		else if (left[p] == oldChild) left[p] = newChild;
+		else right[p] = newChild;
+	}
+
+   /**
+	* Increases node's rank by 1.
+	* @param node
+	*/
+	private void promote(int node){
+		rank[node]++;
+		balanceops++;
+	}
+
+   /**
+	* Decreases node's rank by 1.
+	* @param node
+	*/
+	private void demote(int node){
+		rank[node]--;
+		balanceops++;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int node){
+		return (V) info[node];
+	}
+
+   /**
+	* takes a slot from the free-list (or the end of the arrays) and makes it a leaf.
+	* time complexity: O(1) amortized
+	*/
+	private int allocate(long k, V i, int p){
+		int node;
+		if (freeHead != EXT){
+			node = freeHead;
+			freeHead = parent[node];
+		}
+		else{
+			if (used == key.length) grow();
+			node = used++;
+		}
+		left[node] = EXT;
+		right[node] = EXT;
+		parent[node] = p;
+		rank[node] = 0;
+		key[node] = k;
+		info[node] = i;
+		return node;
+	}
+
+   /**
+	* returns node's slot to the free-list
+	*/
+	private void release(int node){
+		info[node] = null; //let the value be collected
+		parent[node] = freeHead;
+		freeHead = node;
+	}
+
+   /**
+	* grows all arrays by half
+	*/
+	private void grow(){
+		int capacity = key.length + (key.length >> 1) + 1;
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		rank = Arrays.copyOf(rank, capacity);
+		key = Arrays.copyOf(key, capacity);
+		info = Arrays.copyOf(info, capacity);
+	}
+}
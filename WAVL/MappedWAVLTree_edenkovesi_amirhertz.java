@@ -0,0 +1,753 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * MappedWAVLTree
+ *
+ * A WAVL Tree with distinct integer keys and info, stored in memory mapped files instead of the heap,
+ * for trees larger than the heap. Pages are cached by the OS, so only the working set is in memory,
+ * and open only reads the header, however large the tree is.
+ *
+ * The layout is the one of ArrayWAVLTree, in fixed-size records in the file at path:
+ * a 64 byte header (magic, version, root, size, used, freeHead, minFP, maxFP, end of the info file),
+ * then 32 byte node records {left, right, parent, rank, key, info offset}, addressed by index.
+ * The index EXT (-1) is the shared external node, deleted records are kept on a free-list (through parent).
+ * Infos are kept in path.info as a length and the UTF-8 bytes, in blocks of a power of 2 bytes (at least 16);
+ * a node holds the offset of its info's block, -1 for null. The block of a deleted item goes on the free-list
+ * of its size, whose heads are the first INFO_HEADER bytes of path.info, and is reused by the next info
+ * of that size. So under churn the info file stays within the largest live infos of each size ever held
+ * (at most twice their bytes), instead of growing with every insert.
+ * Rebalancing is the same as in ArrayWAVLTree (rank rules of WAVLTree).
+ *
+ * Both files are mapped in chunks of 64MB, mapped on first use, and the files grow a chunk at a time.
+ * Changes are written to the mapped pages directly: a process that dies between operations
+ * leaves a consistent tree (the pages are the OS's), force() and close() make them survive the machine.
+ * A MappedWAVLTree must be used by one thread at a time. open locks the file, so a file can be open
+ * in one MappedWAVLTree only, in this process or another.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class MappedWAVLTree implements Closeable {
+
+	private static final int EXT = -1; //the shared external node
+	private static final int MAGIC = 0x5741564D; //"WAVM"
+	private static final int VERSION = 2; //1 had no info free-lists
+	private static final int HEADER = 64;
+	private static final int RECORD = 32;
+	private static final int LEFT = 0, RIGHT = 4, PARENT = 8, RANK = 12, KEY = 16, INFO = 24; //record fields
+	private static final int CHUNK_BITS = 26; //64MB chunks, a multiple of the record size
+	private static final int INFO_HEADER = 256; //free-list heads of the info blocks, a long for each size
+	private static final int MIN_BLOCK_BITS = 4; //16 bytes, room for the length and a free-list link
+
+	private final Region nodes;
+	private final Region infos;
+
+	private int root;
+	private int size; //in order to return size in O(1)
+	private int used; //number of records ever handed out (high-water mark)
+	private int freeHead; //first free record, EXT if the free-list is empty
+	private int balanceops; //global variable,counting balance operations
+	private int minFP; //finger pointer to minimal key node.in order to return min in O(1)
+	private int maxFP; //finger pointer to maximal key node. to return max in O(1)
+	private long infoEnd; //where the next new info block starts
+
+	private MappedWAVLTree(Region nodes, Region infos){
+		this.nodes = nodes;
+		this.infos = infos;
+	}
+
+	/**
+	 * public static MappedWAVLTree open(Path path) throws IOException
+	 *
+	 * opens the tree in the file at path (and path.info), creating an empty one if there is no file.
+	 * throws IOException if the file is not a MappedWAVLTree, or is open in another MappedWAVLTree.
+	 * time complexity: O(1), nothing but the header is read
+	 */
+	public static MappedWAVLTree open(Path path) throws IOException{
+		Region nodes = new Region(path);
+		if (!nodes.tryLock()){
+			nodes.close();
+			throw new IOException(path + " is open in another MappedWAVLTree");
+		}
+		Region infos;
+		try{
+			infos = new Region(path.resolveSibling(path.getFileName() + ".info"));
+		}
+		catch (IOException e){
+			nodes.close();
+			throw e;
+		}
+		MappedWAVLTree tree = new MappedWAVLTree(nodes, infos);
+		try{
+			if (nodes.fileSize() == 0) tree.create();
+			else tree.readHeader();
+		}
+		catch (IOException e){
+			tree.close();
+			throw e;
+		}
+		return tree;
+	}
+
+	private void create(){
+		root = EXT;
+		size = 0;
+		used = 0;
+		freeHead = EXT;
+		minFP = EXT;
+		maxFP = EXT;
+		infoEnd = INFO_HEADER;
+		for (int offset = 0; offset < INFO_HEADER; offset += 8) infos.putLong(offset, -1); //no free blocks
+		nodes.putInt(0, MAGIC);
+		nodes.putInt(4, VERSION);
+		writeHeader();
+	}
+
+	private void readHeader() throws IOException{
+		if (nodes.fileSize() < HEADER || nodes.getInt(0) != MAGIC) throw new IOException("not a MappedWAVLTree file");
+		if (nodes.getInt(4) != VERSION) throw new IOException("unsupported MappedWAVLTree version " + nodes.getInt(4));
+		root = nodes.getInt(8);
+		size = nodes.getInt(12);
+		used = nodes.getInt(16);
+		freeHead = nodes.getInt(20);
+		minFP = nodes.getInt(24);
+		maxFP = nodes.getInt(28);
+		infoEnd = nodes.getLong(32);
+		if (size < 0 || used < size || HEADER + (long) used * RECORD > nodes.fileSize() || infoEnd < INFO_HEADER || infoEnd > infos.fileSize()){
+			throw new IOException("corrupt MappedWAVLTree header");
+		}
+	}
+
+	// the header is rewritten at the end of every change, so the file is consistent between operations
+	private void writeHeader(){
+		nodes.putInt(8, root);
+		nodes.putInt(12, size);
+		nodes.putInt(16, used);
+		nodes.putInt(20, freeHead);
+		nodes.putInt(24, minFP);
+		nodes.putInt(28, maxFP);
+		nodes.putLong(32, infoEnd);
+	}
+
+	/**
+	 * public void force()
+	 *
+	 * writes the changed pages of both files to the disk.
+	 */
+	public void force(){
+		infos.force();
+		nodes.force();
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * forces and unmaps the files. the tree must not be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException{
+		try{
+			force();
+		}
+		finally{
+			try{
+				infos.close();
+			}
+			finally{
+				nodes.close();
+			}
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty() {
+		return root == EXT;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	public String search(int k){
+		int node = find(k);
+		return node == EXT ? null : info(node);
+	}
+
+	/**
+	 * returns the node with key k, or EXT if it is not in the tree
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	private int find(int k){
+		int node = root;
+		while (node != EXT){
+			int key = key(node);
+			if (key == k) break;
+			node = k < key ? left(node) : right(node);
+		}
+		return node;
+	}
+
+   /**
+	* public String min()
+	*
+	* Returns the info of the item with the smallest key in the tree,
+	* or null if the tree is empty
+	* time complexity: O(1)
+	*/
+	public String min(){
+		if (empty()) return null;
+		return info(minFP);
+	}
+
+   /**
+	* public String max()
+	*
+	* Returns the info of the item with the largest key in the tree,
+	* or null if the tree is empty
+	* time complexity: O(1)
+	*/
+	public String max(){
+		if (empty()) return null;
+		return info(maxFP);
+	}
+
+   /**
+	* public int[] keysToArray()
+	*
+	* Returns a sorted array which contains all keys in the tree,
+	* or an empty array if the tree is empty.
+	* time complexity: O(n)
+	*/
+	public int[] keysToArray(){
+		int[] arr = new int[size];
+		int i = 0;
+		for (int node = minFP; node != EXT; node = successor(node)) arr[i++] = key(node);
+		return arr;
+	}
+
+   /**
+	* public String[] infoToArray()
+	*
+	* Returns an array which contains all info in the tree,
+	* sorted by their respective keys,
+	* or an empty array if the tree is empty.
+	* time complexity: O(n)
+	*/
+	public String[] infoToArray(){
+		String[] arr = new String[size];
+		int i = 0;
+		for (int node = minFP; node != EXT; node = successor(node)) arr[i++] = info(node);
+		return arr;
+	}
+
+   /**
+	* returns the in-order successor of node, or EXT if node is the maximum.
+	* walks up parent pointers, so it needs no stack.
+	* time complexity: O(1) amortized over a full in-order walk
+	*/
+	private int successor(int node){
+		if (right(node) != EXT){
+			node = right(node);
+			while (left(node) != EXT) node = left(node);
+			return node;
+		}
+		int p = parent(node);
+		while (p != EXT && node == right(p)){
+			node = p;
+			p = parent(p);
+		}
+		return p;
+	}
+
+   /**
+	* public int insert(int k, String i)
+	* inserts an item with key k and info i to the WAVL tree.
+	* the tree must remain valid (keep its invariants).
+	* returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	* returns -1 if an item with key k already exists in the tree.
+	* time complexity: O(log n), n=number of tree nodes
+	*/
+	public int insert(int k, String i) {
+		this.balanceops = 0;
+		int p = EXT;
+		int node = root;
+		while (node != EXT){
+			int key = key(node);
+			if (k == key) return -1; //node already exists in the tree
+			p = node;
+			node = k < key ? left(node) : right(node);
+		}
+		int newNode = allocate(k, i, p);
+		if (p == EXT) root = newNode; //new node is the root
+		else if (k < key(p)) setLeft(p, newNode);
+		else setRight(p, newNode);
+		if (minFP == EXT || k < key(minFP)) minFP = newNode;
+		if (maxFP == EXT || k > key(maxFP)) maxFP = newNode;
+		size++;
+		balanceAfterInsertion(newNode);
+		writeHeader();
+		return balanceops;
+	}
+
+   /**
+	* Balances the tree after insertion, going bottom-up from node.
+	* either rotates around node or promotes the node's parent, according to the situation
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterInsertion(int node){
+		int p = parent(node);
+		while (p != EXT && rank(p) == rank(node)){
+			if (node == left(p)){
+				//case 1 - promote
+				if (rank(p) - rankOf(right(p)) == 1){
+					promote(p);
+					node = p;
+					p = parent(p);
+					continue;
+				}
+				//case 2 - rotate right
+				if (rankOf(right(node)) < rankOf(left(node))){
+					demote(p);
+					rotateRight(node);
+				}
+				//case 3 - double rotate
+				else{
+					int axis = right(node);
+					demote(p);
+					demote(node);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+				}
+			}
+			// up to symmetry
+			else{
+				//case 1 - promote
+				if (rank(p) - rankOf(left(p)) == 1){
+					promote(p);
+					node = p;
+					p = parent(p);
+					continue;
+				}
+				//case 2 - rotate left
+				if (rankOf(left(node)) < rankOf(right(node))){
+					demote(p);
+					rotateLeft(node);
+				}
+				//case 3 - double rotate
+				else{
+					int axis = left(node);
+					demote(p);
+					demote(node);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+				}
+			}
+			return;
+		}
+	}
+
+   /**
+	* public int delete(int k)
+	*
+	* deletes an item with key k from the binary tree, if it is there;
+	* the tree must remain valid (keep its invariants).
+	* returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	* returns -1 if an item with key k was not found in the tree.
+	* time complexity: O(log n), n=number of tree nodes
+	*/
+	public int delete(int k){
+		balanceops = 0;
+		int node = find(k);
+		if (node == EXT) return -1;
+		freeInfo(nodes.getLong(record(node) + INFO));
+		//update minFP & maxFP, node has no left child if it is the minimum (no right child if maximum)
+		if (node == minFP) minFP = right(node) != EXT ? right(node) : parent(node);
+		if (node == maxFP) maxFP = left(node) != EXT ? left(node) : parent(node);
+		//node has two children - move the successor's item into node and remove the successor instead
+		if (left(node) != EXT && right(node) != EXT){
+			int succ = right(node);
+			while (left(succ) != EXT) succ = left(succ);
+			nodes.putInt(record(node) + KEY, key(succ));
+			nodes.putLong(record(node) + INFO, nodes.getLong(record(succ) + INFO));
+			if (maxFP == succ) maxFP = node;
+			node = succ;
+		}
+		//node has at most one child, which is a leaf - splice it in node's place
+		int child = left(node) != EXT ? left(node) : right(node);
+		int p = parent(node);
+		if (child != EXT) setParent(child, p);
+		if (p == EXT) root = child;
+		else if (node == left(p)) setLeft(p, child);
+		else setRight(p, child);
+		release(node);
+		size--;
+		if (p != EXT){
+			//not a legal leaf
+			if (left(p) == EXT && right(p) == EXT && rank(p) == 1){
+				demote(p);
+				child = p;
+				p = parent(p);
+			}
+			balanceAfterDeletion(child, p);
+		}
+		writeHeader();
+		return balanceops;
+	}
+
+   /**
+	* Balances the tree after deletion op, going bottom-up from node (a child of p, possibly EXT).
+	* either rotates around node's sibling or demotes.
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterDeletion(int node, int p){
+		//finish rebalance when there is no 3-child
+		while (p != EXT && rank(p) - rankOf(node) == 3){
+			// node is right child
+			if (node == right(p)){
+				int brother = left(p);
+				//case 1
+				if (rank(p) - rank(brother) == 2){
+					demote(p);
+				}
+				//case 2
+				else if (rank(brother) - rankOf(left(brother)) == 2 && rank(brother) - rankOf(right(brother)) == 2){
+					demote(p);
+					demote(brother);
+				}
+				//case 3
+				else if (rank(brother) - rankOf(left(brother)) == 1){
+					rotateRight(brother);
+					promote(brother);
+					demote(p);
+					//not a legal leaf
+					if (left(p) == EXT && right(p) == EXT) demote(p);
+					return;
+				}
+				//case 4
+				else{
+					int axis = right(brother);
+					demote(p);
+					demote(p);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+					return;
+				}
+			}
+			// up to symmetry
+			else{
+				int brother = right(p);
+				//case 1
+				if (rank(p) - rank(brother) == 2){
+					demote(p);
+				}
+				//case 2
+				else if (rank(brother) - rankOf(left(brother)) == 2 && rank(brother) - rankOf(right(brother)) == 2){
+					demote(p);
+					demote(brother);
+				}
+				//case 3
+				else if (rank(brother) - rankOf(right(brother)) == 1){
+					rotateLeft(brother);
+					promote(brother);
+					demote(p);
+					//not a legal leaf
+					if (left(p) == EXT && right(p) == EXT) demote(p);
+					return;
+				}
+				//case 4
+				else{
+					int axis = left(brother);
+					demote(p);
+					demote(p);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+					return;
+				}
+			}
+			node = p;
+			p = parent(p);
+		}
+	}
+
+   /**
+	* returns the rank of node, -1 for the external node
+	*/
+	private int rankOf(int node){
+		return node == EXT ? -1 : rank(node);
+	}
+
+   /**
+	* Performs right rotation around node.
+	* @param node
+	*/
+	private void rotateRight(int node){
+		int p = parent(node);
+		int grandparent = parent(p);
+		replaceChild(grandparent, p, node);
+		int inner = right(node);
+		setLeft(p, inner);
+		if (inner != EXT) setParent(inner, p);
+		setRight(node, p);
+		setParent(p, node);
+		setParent(node, grandparent);
+		balanceops++;
+	}
+
+   /**
+	* Performs left rotation around node.
+	* @param node
+	*/
+	private void rotateLeft(int node){
+		int p = parent(node);
+		int grandparent = parent(p);
+		replaceChild(grandparent, p, node);
+		int inner = left(node);
+		setRight(p, inner);
+		if (inner != EXT) setParent(inner, p);
+		setLeft(node, p);
+		setParent(p, node);
+		setParent(node, grandparent);
+		balanceops++;
+	}
+
+   /**
+	* makes newChild take oldChild's place under p (or as the root when p is EXT)
+	*/
+	private void replaceChild(int p, int oldChild, int newChild){
+		if (p == EXT) root = newChild;
+		else if (left(p) == oldChild) setLeft(p, newChild);
+		else setRight(p, newChild);
+	}
+
+   /**
+	* Increases node's rank by 1.
+	* @param node
+	*/
+	private void promote(int node){
+		nodes.putInt(record(node) + RANK, rank(node) + 1);
+		balanceops++;
+	}
+
+   /**
+	* Decreases node's rank by 1.
+	* @param node
+	*/
+	private void demote(int node){
+		nodes.putInt(record(node) + RANK, rank(node) - 1);
+		balanceops++;
+	}
+
+   /**
+	* takes a record from the free-list (or the end of the file) and makes it a leaf.
+	* time complexity: O(1) amortized
+	*/
+	private int allocate(int k, String i, int p){
+		int node;
+		if (freeHead != EXT){
+			node = freeHead;
+			freeHead = parent(node);
+		}
+		else{
+			if (used == Integer.MAX_VALUE) throw new IllegalStateException("the tree is full");
+			node = used++;
+		}
+		long record = record(node);
+		nodes.putInt(record + LEFT, EXT);
+		nodes.putInt(record + RIGHT, EXT);
+		nodes.putInt(record + PARENT, p);
+		nodes.putInt(record + RANK, 0);
+		nodes.putInt(record + KEY, k);
+		nodes.putLong(record + INFO, appendInfo(i));
+		return node;
+	}
+
+   /**
+	* returns node's record to the free-list
+	*/
+	private void release(int node){
+		setParent(node, freeHead);
+		freeHead = node;
+	}
+
+	// appends info to the info file and returns its offset, -1 for null
+	private long appendInfo(String info){
+		if (info == null) return -1;
+		byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+		long head = freeListHead(bytes.length);
+		long offset = infos.getLong(head);
+		if (offset >= 0) infos.putLong(head, infos.getLong(offset + 4)); //reuse a free block
+		else{
+			offset = infoEnd;
+			infoEnd = offset + (1L << blockBits(bytes.length));
+		}
+		infos.putInt(offset, bytes.length);
+		infos.put(offset + 4, bytes);
+		return offset;
+	}
+
+	// puts the block of the info at offset on the free-list of its size, the length stays to tell the size
+	private void freeInfo(long offset){
+		if (offset < 0) return;
+		long head = freeListHead(infos.getInt(offset));
+		infos.putLong(offset + 4, infos.getLong(head));
+		infos.putLong(head, offset);
+	}
+
+	// the offset in the info file of the head of the free-list of the blocks for infos of length bytes
+	private static long freeListHead(int length){
+		return 8L * (blockBits(length) - MIN_BLOCK_BITS);
+	}
+
+	// log2 of the size of the block for an info of length bytes: the power of 2 that fits it and its length
+	private static int blockBits(int length){
+		return Math.max(MIN_BLOCK_BITS, 64 - Long.numberOfLeadingZeros(4L + length - 1));
+	}
+
+	private String info(int node){
+		long offset = nodes.getLong(record(node) + INFO);
+		if (offset < 0) return null;
+		byte[] bytes = new byte[infos.getInt(offset)];
+		infos.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long record(int node){
+		return HEADER + (long) node * RECORD;
+	}
+
+	private int left(int node){ return nodes.getInt(record(node) + LEFT); }
+	private int right(int node){ return nodes.getInt(record(node) + RIGHT); }
+	private int parent(int node){ return nodes.getInt(record(node) + PARENT); }
+	private int rank(int node){ return nodes.getInt(record(node) + RANK); }
+	private int key(int node){ return nodes.getInt(record(node) + KEY); }
+	private void setLeft(int node, int child){ nodes.putInt(record(node) + LEFT, child); }
+	private void setRight(int node, int child){ nodes.putInt(record(node) + RIGHT, child); }
+	private void setParent(int node, int p){ nodes.putInt(record(node) + PARENT, p); }
+
+   /**
+	* a file mapped in chunks of 2^CHUNK_BITS bytes, each mapped when it is first used.
+	* mapping a chunk past the end of the file grows the file to the end of the chunk.
+	* an int or long never crosses a chunk (the headers and records are aligned), byte arrays may.
+	*/
+	private static final class Region{
+		private static final long CHUNK = 1L << CHUNK_BITS;
+
+		private final FileChannel channel;
+		private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+		Region(Path path) throws IOException{
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		// locks the whole file until it is closed, false if it is locked already
+		boolean tryLock() throws IOException{
+			try{
+				return channel.tryLock() != null;
+			}
+			catch (OverlappingFileLockException e){
+				return false; //locked by this process
+			}
+		}
+
+		long fileSize() throws IOException{
+			return channel.size();
+		}
+
+		int getInt(long offset){
+			return chunk(offset).getInt((int) (offset & (CHUNK - 1)));
+		}
+
+		long getLong(long offset){
+			return chunk(offset).getLong((int) (offset & (CHUNK - 1)));
+		}
+
+		void putInt(long offset, int value){
+			chunk(offset).putInt((int) (offset & (CHUNK - 1)), value);
+		}
+
+		void putLong(long offset, long value){
+			chunk(offset).putLong((int) (offset & (CHUNK - 1)), value);
+		}
+
+		void get(long offset, byte[] bytes){
+			for (int done = 0; done < bytes.length; ){
+				int at = (int) ((offset + done) & (CHUNK - 1));
+				int length = (int) Math.min(bytes.length - done, CHUNK - at);
+				chunk(offset + done).get(at, bytes, done, length);
+				done += length;
+			}
+		}
+
+		void put(long offset, byte[] bytes){
+			for (int done = 0; done < bytes.length; ){
+				int at = (int) ((offset + done) & (CHUNK - 1));
+				int length = (int) Math.min(bytes.length - done, CHUNK - at);
+				chunk(offset + done).put(at, bytes, done, length);
+				done += length;
+			}
+		}
+
+		void force(){
+			for (MappedByteBuffer chunk : chunks) chunk.force();
+		}
+
+		// unmapping is left to the garbage collector, Java has no API for it
+		void close() throws IOException{
+			chunks.clear();
+			channel.close();
+		}
+
+		private MappedByteBuffer chunk(long offset){
+			int index = (int) (offset >>> CHUNK_BITS);
+			if (index < chunks.size()) return chunks.get(index);
+			try{
+				while (chunks.size() <= index){
+					chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK, CHUNK));
+				}
+			}
+			catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+			return chunks.get(index);
+		}
+	}
+}
@@ -0,0 +1,546 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ *
+ * PersistentWAVLTree
+ *
+ * A persistent WAVL Tree with distinct integer keys and info.
+ * Nodes are immutable and have no parent pointers:
+ * insert and delete copy the O(log n) nodes on the path they change
+ * (including every node a rotation, promote or demote touches)
+ * and publish the new root as a new version.
+ * snapshot() returns the current version in O(1). A snapshot never changes,
+ * it shares all untouched nodes with the tree, and whatever no version
+ * refers to anymore is left to the garbage collector.
+ *
+ * insert and delete must be called by one thread at a time.
+ * snapshot() and all reads may be called from any thread.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class PersistentWAVLTree {
+
+	private static final int MAX_DEPTH = 64; //a WAVL tree with less than 2^31 nodes is less than 62 high
+
+	private volatile Snapshot current = Snapshot.EMPTY; //the latest version
+	private int balanceops; //global variable,counting balance operations
+
+	/**
+	 * public Snapshot snapshot()
+	 *
+	 * returns the current version of the tree. later insertions and deletions do not change it.
+	 * time complexity: O(1)
+	 */
+	public Snapshot snapshot(){
+		return current;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return current.empty();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return current.size();
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * time complexity: O(log n)
+	 */
+	public String search(int k){
+		return current.search(k);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(log n)
+	 */
+	public String min(){
+		return current.min();
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * time complexity: O(log n)
+	 */
+	public String max(){
+		return current.max();
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		return current.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		return current.infoToArray();
+	}
+
+	/**
+	 * public SnapshotIterator range(int lo, int hi)
+	 *
+	 * returns an ascending cursor over the keys in [lo, hi] of the current version.
+	 * time complexity: O(log n) to create, O(1) amortized per key
+	 */
+	public SnapshotIterator range(int lo, int hi){
+		return current.range(lo, hi);
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * time complexity: O(log n), copies the search path
+	 */
+	public int insert(int k, String i){
+		Snapshot version = current;
+		Node[] path = new Node[MAX_DEPTH];
+		int depth = 0;
+		for (Node node = version.root; node != null; node = k < node.key ? node.left : node.right){
+			if (k == node.key) return -1; //node already exists in the tree
+			path[depth++] = node;
+		}
+		balanceops = 0;
+		Node child = new Node(null, null, 0, k, i);
+		boolean unbalanced = true; //child may have its parent's rank
+		while (depth > 0){
+			Node parent = path[--depth];
+			boolean isLeft = k < parent.key;
+			if (unbalanced && parent.rank == child.rank){
+				Node brother = isLeft ? parent.right : parent.left;
+				//case 1 - promote, the problem may move up
+				if (parent.rank - rank(brother) == 1){
+					child = isLeft ? parent.with(child, brother, parent.rank + 1) : parent.with(brother, child, parent.rank + 1);
+					balanceops++;
+					continue;
+				}
+				//cases 2 and 3 - a rotation always leaves a valid WAVL tree
+				child = isLeft ? rotateAfterInsertionLeft(parent, child) : rotateAfterInsertionRight(parent, child);
+				unbalanced = false;
+				continue;
+			}
+			unbalanced = false;
+			child = isLeft ? parent.with(child, parent.right, parent.rank) : parent.with(parent.left, child, parent.rank);
+		}
+		current = new Snapshot(child, version.size + 1);
+		return balanceops;
+	}
+
+   /**
+	* insertion cases 2 and 3: node is the left child of parent with parent's rank,
+	* and node's brother is a 2-child.
+	* returns the root of the rotated copy of parent's subtree.
+	*/
+	private Node rotateAfterInsertionLeft(Node parent, Node node){
+		Node inner = node.right;
+		//case 2 - rotate right
+		if (rank(inner) < rank(node.left)){
+			balanceops += 2;
+			return node.with(node.left, parent.with(inner, parent.right, parent.rank - 1), node.rank);
+		}
+		//case 3 - double rotate
+		balanceops += 5;
+		return inner.with(node.with(node.left, inner.left, node.rank - 1),
+				parent.with(inner.right, parent.right, parent.rank - 1), inner.rank + 1);
+	}
+
+   /**
+	* up to symmetry
+	*/
+	private Node rotateAfterInsertionRight(Node parent, Node node){
+		Node inner = node.left;
+		//case 2 - rotate left
+		if (rank(inner) < rank(node.right)){
+			balanceops += 2;
+			return node.with(parent.with(parent.left, inner, parent.rank - 1), node.right, node.rank);
+		}
+		//case 3 - double rotate
+		balanceops += 5;
+		return inner.with(parent.with(parent.left, inner.left, parent.rank - 1),
+				node.with(inner.right, node.right, node.rank - 1), inner.rank + 1);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * time complexity: O(log n), copies the search path
+	 */
+	public int delete(int k){
+		Snapshot version = current;
+		Node[] path = new Node[MAX_DEPTH];
+		int depth = 0;
+		Node node = version.root;
+		while (node != null && node.key != k){
+			path[depth++] = node;
+			node = k < node.key ? node.left : node.right;
+		}
+		if (node == null) return -1;
+		balanceops = 0;
+		//node has two children: its successor's item moves up and the successor's node is removed instead
+		int target = -1;
+		Node successor = null;
+		if (node.left != null && node.right != null){
+			target = depth;
+			path[depth++] = node;
+			successor = node.right;
+			while (successor.left != null){
+				path[depth++] = successor;
+				successor = successor.left;
+			}
+			node = successor;
+		}
+		//node has at most one child, which takes its place
+		Node child = node.left != null ? node.left : node.right;
+		Node old = node;
+		boolean unbalanced = true; //child may be a 3-child, or its parent a 2,2 leaf
+		while (depth > 0){
+			Node parent = path[--depth];
+			Node item = depth == target ? successor : parent; //item the copy of parent holds
+			boolean isLeft = parent.left == old;
+			Node brother = isLeft ? parent.right : parent.left;
+			old = parent;
+			if (unbalanced){
+				//not a legal leaf
+				if (child == null && brother == null && parent.rank == 1){
+					child = item.with(null, null, 0);
+					balanceops++;
+					continue;
+				}
+				if (parent.rank - rank(child) == 3){
+					//case 1 - demote, the problem may move up
+					if (parent.rank - rank(brother) == 2){
+						child = isLeft ? item.with(child, brother, parent.rank - 1) : item.with(brother, child, parent.rank - 1);
+						balanceops++;
+						continue;
+					}
+					//case 2 - demote parent and brother, the problem may move up
+					if (brother.rank - rank(brother.left) == 2 && brother.rank - rank(brother.right) == 2){
+						brother = brother.with(brother.left, brother.right, brother.rank - 1);
+						child = isLeft ? item.with(child, brother, parent.rank - 1) : item.with(brother, child, parent.rank - 1);
+						balanceops += 2;
+						continue;
+					}
+					//cases 3 and 4 - a rotation always leaves a valid WAVL tree
+					child = isLeft ? rotateAfterDeletionLeft(item, parent.rank, child, brother)
+							: rotateAfterDeletionRight(item, parent.rank, child, brother);
+					unbalanced = false;
+					continue;
+				}
+				unbalanced = false;
+			}
+			child = isLeft ? item.with(child, brother, parent.rank) : item.with(brother, child, parent.rank);
+		}
+		current = new Snapshot(child, version.size - 1);
+		return balanceops;
+	}
+
+   /**
+	* deletion cases 3 and 4: node is a 3-child on the right of a parent of rank rank holding item,
+	* and node's brother is a 1-child that is not a 2,2 node.
+	* returns the root of the rotated copy of the parent's subtree.
+	*/
+	private Node rotateAfterDeletionRight(Node item, int rank, Node node, Node brother){
+		//case 3 - rotate right
+		if (brother.rank - rank(brother.left) == 1){
+			Node inner = brother.right;
+			int parentRank = rank - 1;
+			balanceops += 3;
+			//not a legal leaf
+			if (inner == null && node == null && parentRank == 1){
+				parentRank--;
+				balanceops++;
+			}
+			return brother.with(brother.left, item.with(inner, node, parentRank), brother.rank + 1);
+		}
+		//case 4 - double rotate
+		Node axis = brother.right;
+		balanceops += 7;
+		return axis.with(brother.with(brother.left, axis.left, brother.rank - 1),
+				item.with(axis.right, node, rank - 2), axis.rank + 2);
+	}
+
+   /**
+	* up to symmetry
+	*/
+	private Node rotateAfterDeletionLeft(Node item, int rank, Node node, Node brother){
+		//case 3 - rotate left
+		if (brother.rank - rank(brother.right) == 1){
+			Node inner = brother.left;
+			int parentRank = rank - 1;
+			balanceops += 3;
+			//not a legal leaf
+			if (inner == null && node == null && parentRank == 1){
+				parentRank--;
+				balanceops++;
+			}
+			return brother.with(item.with(node, inner, parentRank), brother.right, brother.rank + 1);
+		}
+		//case 4 - double rotate
+		Node axis = brother.left;
+		balanceops += 7;
+		return axis.with(item.with(node, axis.left, rank - 2),
+				brother.with(axis.right, brother.right, brother.rank - 1), axis.rank + 2);
+	}
+
+	// rank of a node, -1 for the external node (null)
+	private static int rank(Node node){
+		return node == null ? -1 : node.rank;
+	}
+
+/**
+ * public static final class Snapshot
+ *
+ * One version of a PersistentWAVLTree. It never changes,
+ * so it can be read by any number of threads without locking.
+ */
+public static final class Snapshot{
+
+	private static final Snapshot EMPTY = new Snapshot(null, 0);
+
+	private final Node root; //null for the empty tree
+	private final int size;
+
+	private Snapshot(Node root, int size){
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the version is empty
+	 * time complexity: O(1)
+	 */
+	public boolean empty(){
+		return root == null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the version.
+	 * time complexity: O(1)
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the version
+	 * otherwise, returns null
+	 * time complexity: O(log n)
+	 */
+	public String search(int k){
+		Node node = root;
+		while (node != null){
+			if (k == node.key) return node.info;
+			node = k < node.key ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the version,
+	 * or null if the version is empty
+	 * time complexity: O(log n)
+	 */
+	public String min(){
+		if (root == null) return null;
+		Node node = root;
+		while (node.left != null) node = node.left;
+		return node.info;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the version,
+	 * or null if the version is empty
+	 * time complexity: O(log n)
+	 */
+	public String max(){
+		if (root == null) return null;
+		Node node = root;
+		while (node.right != null) node = node.right;
+		return node.info;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the version,
+	 * or an empty array if the version is empty.
+	 * time complexity: O(n)
+	 */
+	public int[] keysToArray(){
+		int[] keys = new int[size];
+		SnapshotIterator it = iterator();
+		for (int j = 0; j < size; j++) keys[j] = it.nextInt();
+		return keys;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the version,
+	 * sorted by their respective keys,
+	 * or an empty array if the version is empty.
+	 * time complexity: O(n)
+	 */
+	public String[] infoToArray(){
+		String[] infos = new String[size];
+		SnapshotIterator it = iterator();
+		for (int j = 0; j < size; j++){
+			it.nextInt();
+			infos[j] = it.info();
+		}
+		return infos;
+	}
+
+	/**
+	 * public SnapshotIterator iterator()
+	 *
+	 * returns an ascending cursor over all keys of the version.
+	 * time complexity: O(log n) to create, O(1) amortized per key
+	 */
+	public SnapshotIterator iterator(){
+		return new SnapshotIterator(root, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * public SnapshotIterator range(int lo, int hi)
+	 *
+	 * returns an ascending cursor over the keys in [lo, hi] of the version.
+	 * time complexity: O(log n) to create, O(1) amortized per key
+	 */
+	public SnapshotIterator range(int lo, int hi){
+		return new SnapshotIterator(root, lo, hi);
+	}
+}
+
+/**
+ * public static final class SnapshotIterator
+ *
+ * An ascending cursor over the keys of a snapshot.
+ * nodes have no parent pointers, so the path to the next node is kept on a stack of O(log n) nodes.
+ * nextInt() returns the next key and info() returns the info of the key last returned.
+ */
+public static final class SnapshotIterator implements PrimitiveIterator.OfInt{
+
+	private final Node[] stack = new Node[MAX_DEPTH]; //ancestors of the next node whose key is still ahead
+	private int top;
+	private final int bound; //last key to return (inclusive)
+	private Node last; //node of the last returned key
+
+	private SnapshotIterator(Node root, int lo, int bound){
+		this.bound = bound;
+		//the path to the smallest key >= lo, keeping only nodes at or above lo
+		for (Node node = root; node != null; ){
+			if (node.key >= lo){
+				stack[top++] = node;
+				node = node.left;
+			}
+			else node = node.right;
+		}
+	}
+
+	public boolean hasNext(){
+		return top > 0 && stack[top - 1].key <= bound;
+	}
+
+	public int nextInt(){
+		if (!hasNext()) throw new NoSuchElementException();
+		last = stack[--top];
+		for (Node node = last.right; node != null; node = node.left) stack[top++] = node;
+		return last.key;
+	}
+
+	/**
+	 * public String info()
+	 *
+	 * returns the info of the key last returned by nextInt()
+	 */
+	public String info(){
+		if (last == null) throw new IllegalStateException();
+		return last.info;
+	}
+}
+
+/**
+ * private static final class Node
+ *
+ * An immutable WAVL node. The external node is null (rank -1).
+ */
+private static final class Node{
+
+	private final Node left;
+	private final Node right;
+	private final int rank;
+	private final int key;
+	private final String info;
+
+	private Node(Node left, Node right, int rank, int key, String info){
+		this.left = left;
+		this.right = right;
+		this.rank = rank;
+		this.key = key;
+		this.info = info;
+	}
+
+	// a copy of this node's item with new children and rank
+	private Node with(Node left, Node right, int rank){
+		return new Node(left, right, rank, key, info);
+	}
+}
+
+}
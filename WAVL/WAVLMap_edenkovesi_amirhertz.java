@@ -0,0 +1,1070 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ *
+ * WAVLMap
+ *
+ * A WAVL Tree with generic keys and values, ordered by a Comparator
+ * (or by the keys' natural ordering when no Comparator is given).
+ * Implements java.util.NavigableMap, so it can replace a TreeMap.
+ * (the int/String tree keeps the name WAVLTree, so this one is WAVLMap)
+ *
+ * Rebalancing follows the same rank rules as WAVLTree.
+ * External nodes are represented by null (rank -1).
+ * Like TreeMap, null keys are not allowed.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class WAVLMap<K,V> extends AbstractMap<K,V> implements NavigableMap<K,V> {
+
+	private final Comparator<? super K> comparator;
+	private Node<K,V> root;
+	private int size; //in order to return size in O(1)
+	private int modCount; //structural modifications, for fail-fast iterators
+	private int balanceops; //counting balance operations of the last put/remove
+	private EntrySet entrySet;
+	private KeySet<K> navigableKeySet;
+	private NavigableMap<K,V> descendingMap;
+
+   /**
+	* create an empty WAVL map ordered by the keys' natural ordering
+	*/
+	public WAVLMap(){
+		this.comparator = null;
+	}
+
+   /**
+	* create an empty WAVL map ordered by comparator
+	*/
+	public WAVLMap(Comparator<? super K> comparator){
+		this.comparator = comparator;
+	}
+
+   /**
+	* create a WAVL map with the mappings of m, ordered by the keys' natural ordering
+	*/
+	public WAVLMap(Map<? extends K, ? extends V> m){
+		this.comparator = null;
+		putAll(m);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of mappings in the map.
+	 * time complexity: O(1)
+	 */
+	@Override
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * public int balanceOps()
+	 *
+	 * Returns the number of rebalancing operations done by the last put or remove.
+	 * time complexity: O(1)
+	 */
+	public int balanceOps(){
+		return balanceops;
+	}
+
+	@Override
+	public Comparator<? super K> comparator(){
+		return comparator;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(Object a, Object b){
+		return comparator == null ? ((Comparable<Object>) a).compareTo(b) : comparator.compare((K) a, (K) b);
+	}
+
+	/**
+	 * returns the node with key k if it exists in the map
+	 * otherwise, returns null
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	private Node<K,V> find(Object k){
+		if (k == null) throw new NullPointerException();
+		Node<K,V> node = root;
+		while (node != null){
+			int c = compare(k, node.key);
+			if (c == 0) return node;
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object k){
+		return find(k) != null;
+	}
+
+	/**
+	 * public V get(Object k)
+	 *
+	 * returns the value mapped to k, or null if there is none
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	@Override
+	public V get(Object k){
+		Node<K,V> node = find(k);
+		return node == null ? null : node.value;
+	}
+
+   /**
+	* public V put(K k, V v)
+	* maps k to v. if k was already in the map its value is replaced.
+	* returns the previous value of k, or null if there was none.
+	* time complexity: O(log n), n=number of tree nodes
+	*/
+	@Override
+	public V put(K k, V v){
+		if (k == null) throw new NullPointerException();
+		balanceops = 0;
+		Node<K,V> parent = null;
+		Node<K,V> node = root;
+		int c = 0;
+		while (node != null){
+			c = compare(k, node.key);
+			if (c == 0){
+				V old = node.value;
+				node.value = v;
+				return old;
+			}
+			parent = node;
+			node = c < 0 ? node.left : node.right;
+		}
+		if (parent == null) compare(k, k); //type (and null) check, like TreeMap
+		Node<K,V> newNode = new Node<K,V>(k, v, parent);
+		if (parent == null) root = newNode;
+		else if (c < 0) parent.left = newNode;
+		else parent.right = newNode;
+		size++;
+		modCount++;
+		balanceAfterInsertion(newNode);
+		return null;
+	}
+
+	/**
+	 * public V remove(Object k)
+	 *
+	 * removes the mapping of k, if it is there.
+	 * returns the removed value, or null if k was not in the map.
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	@Override
+	public V remove(Object k){
+		Node<K,V> node = find(k);
+		if (node == null) return null;
+		V old = node.value;
+		deleteNode(node);
+		return old;
+	}
+
+	@Override
+	public void clear(){
+		modCount++;
+		size = 0;
+		root = null;
+	}
+
+	// ---- navigation ----
+
+	@Override
+	public Map.Entry<K,V> firstEntry(){
+		return export(first());
+	}
+
+	@Override
+	public Map.Entry<K,V> lastEntry(){
+		return export(last());
+	}
+
+	@Override
+	public Map.Entry<K,V> pollFirstEntry(){
+		Node<K,V> node = first();
+		Map.Entry<K,V> e = export(node);
+		if (node != null) deleteNode(node);
+		return e;
+	}
+
+	@Override
+	public Map.Entry<K,V> pollLastEntry(){
+		Node<K,V> node = last();
+		Map.Entry<K,V> e = export(node);
+		if (node != null) deleteNode(node);
+		return e;
+	}
+
+	@Override
+	public K firstKey(){
+		return keyOrThrow(first());
+	}
+
+	@Override
+	public K lastKey(){
+		return keyOrThrow(last());
+	}
+
+	@Override
+	public Map.Entry<K,V> lowerEntry(K k){
+		return export(lower(k, false));
+	}
+
+	@Override
+	public K lowerKey(K k){
+		return keyOrNull(lower(k, false));
+	}
+
+	@Override
+	public Map.Entry<K,V> floorEntry(K k){
+		return export(lower(k, true));
+	}
+
+	@Override
+	public K floorKey(K k){
+		return keyOrNull(lower(k, true));
+	}
+
+	@Override
+	public Map.Entry<K,V> ceilingEntry(K k){
+		return export(higher(k, true));
+	}
+
+	@Override
+	public K ceilingKey(K k){
+		return keyOrNull(higher(k, true));
+	}
+
+	@Override
+	public Map.Entry<K,V> higherEntry(K k){
+		return export(higher(k, false));
+	}
+
+	@Override
+	public K higherKey(K k){
+		return keyOrNull(higher(k, false));
+	}
+
+	private Node<K,V> first(){
+		Node<K,V> node = root;
+		if (node != null) while (node.left != null) node = node.left;
+		return node;
+	}
+
+	private Node<K,V> last(){
+		Node<K,V> node = root;
+		if (node != null) while (node.right != null) node = node.right;
+		return node;
+	}
+
+	/**
+	 * returns the node with the largest key below k (or equal to k, if inclusive), or null
+	 * time complexity: O(log n), one descent
+	 */
+	private Node<K,V> lower(Object k, boolean inclusive){
+		Node<K,V> best = null;
+		Node<K,V> node = root;
+		while (node != null){
+			int c = compare(k, node.key);
+			if (c > 0 || (c == 0 && inclusive)){
+				best = node;
+				if (c == 0) return best;
+				node = node.right;
+			}
+			else node = node.left;
+		}
+		return best;
+	}
+
+	/**
+	 * returns the node with the smallest key above k (or equal to k, if inclusive), or null
+	 * time complexity: O(log n), one descent
+	 */
+	private Node<K,V> higher(Object k, boolean inclusive){
+		Node<K,V> best = null;
+		Node<K,V> node = root;
+		while (node != null){
+			int c = compare(k, node.key);
+			if (c < 0 || (c == 0 && inclusive)){
+				best = node;
+				if (c == 0) return best;
+				node = node.left;
+			}
+			else node = node.right;
+		}
+		return best;
+	}
+
+	private static <K,V> Node<K,V> successor(Node<K,V> node){
+		if (node.right != null){
+			node = node.right;
+			while (node.left != null) node = node.left;
+			return node;
+		}
+		Node<K,V> p = node.parent;
+		while (p != null && node == p.right){
+			node = p;
+			p = p.parent;
+		}
+		return p;
+	}
+
+	private static <K,V> Node<K,V> predecessor(Node<K,V> node){
+		if (node.left != null){
+			node = node.left;
+			while (node.right != null) node = node.right;
+			return node;
+		}
+		Node<K,V> p = node.parent;
+		while (p != null && node == p.left){
+			node = p;
+			p = p.parent;
+		}
+		return p;
+	}
+
+	private static <K,V> Map.Entry<K,V> export(Node<K,V> node){
+		return node == null ? null : new AbstractMap.SimpleImmutableEntry<K,V>(node.key, node.value);
+	}
+
+	private static <K> K keyOrNull(Node<K,?> node){
+		return node == null ? null : node.key;
+	}
+
+	private static <K> K keyOrThrow(Node<K,?> node){
+		if (node == null) throw new NoSuchElementException();
+		return node.key;
+	}
+
+	// ---- views ----
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet(){
+		EntrySet es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	@Override
+	public Set<K> keySet(){
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<K> navigableKeySet(){
+		KeySet<K> ks = navigableKeySet;
+		return ks != null ? ks : (navigableKeySet = new KeySet<K>(this));
+	}
+
+	@Override
+	public NavigableSet<K> descendingKeySet(){
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<K,V> descendingMap(){
+		NavigableMap<K,V> dm = descendingMap;
+		return dm != null ? dm : (descendingMap = new SubMap(null, false, false, null, false, false, true));
+	}
+
+	@Override
+	public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive){
+		if (compare(fromKey, toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+		return new SubMap(fromKey, true, fromInclusive, toKey, true, toInclusive, false);
+	}
+
+	@Override
+	public NavigableMap<K,V> headMap(K toKey, boolean inclusive){
+		compare(toKey, toKey); //type (and null) check
+		return new SubMap(null, false, false, toKey, true, inclusive, false);
+	}
+
+	@Override
+	public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive){
+		compare(fromKey, fromKey); //type (and null) check
+		return new SubMap(fromKey, true, inclusive, null, false, false, false);
+	}
+
+	@Override
+	public SortedMap<K,V> subMap(K fromKey, K toKey){
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<K,V> headMap(K toKey){
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<K,V> tailMap(K fromKey){
+		return tailMap(fromKey, true);
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+		@Override
+		public Iterator<Map.Entry<K,V>> iterator(){
+			return new EntryIterator(first(), null, false);
+		}
+
+		@Override
+		public int size(){
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o){
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+			Node<K,V> node = e.getKey() == null ? null : find(e.getKey());
+			return node != null && eq(node.value, e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o){
+			if (!contains(o)) return false;
+			deleteNode(find(((Map.Entry<?,?>) o).getKey()));
+			return true;
+		}
+
+		@Override
+		public void clear(){
+			WAVLMap.this.clear();
+		}
+	}
+
+   /**
+	* in-order iterator over the nodes from next up to (not including) fence,
+	* following parent pointers, so it needs O(1) extra memory.
+	*/
+	private class EntryIterator implements Iterator<Map.Entry<K,V>> {
+		private Node<K,V> next;
+		private Node<K,V> fence; //first node not to return, null for the end of the tree
+		private final boolean descending;
+		private Node<K,V> lastReturned;
+		private int expectedModCount = modCount;
+
+		EntryIterator(Node<K,V> first, Node<K,V> fence, boolean descending){
+			this.next = first;
+			this.fence = fence;
+			this.descending = descending;
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next != null && next != fence;
+		}
+
+		@Override
+		public Map.Entry<K,V> next(){
+			if (!hasNext()) throw new NoSuchElementException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			lastReturned = next;
+			next = descending ? predecessor(next) : successor(next);
+			return lastReturned;
+		}
+
+		@Override
+		public void remove(){
+			if (lastReturned == null) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			Node<K,V> removed = deleteNode(lastReturned);
+			//the mapping of the removed node now lives in lastReturned
+			if (next == removed) next = lastReturned;
+			if (fence == removed) fence = lastReturned;
+			expectedModCount = modCount;
+			lastReturned = null;
+		}
+	}
+
+   /**
+	* a bounded and/or descending view of the map.
+	* all operations are checked against the bounds and forwarded to the map.
+	*/
+	private class SubMap extends AbstractMap<K,V> implements NavigableMap<K,V> {
+		private final K lo, hi;
+		private final boolean hasLo, loInclusive, hasHi, hiInclusive;
+		private final boolean descending;
+
+		SubMap(K lo, boolean hasLo, boolean loInclusive, K hi, boolean hasHi, boolean hiInclusive, boolean descending){
+			this.lo = lo;
+			this.hasLo = hasLo;
+			this.loInclusive = loInclusive;
+			this.hi = hi;
+			this.hasHi = hasHi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		private boolean tooLow(Object k){
+			if (!hasLo) return false;
+			int c = compare(k, lo);
+			return c < 0 || (c == 0 && !loInclusive);
+		}
+
+		private boolean tooHigh(Object k){
+			if (!hasHi) return false;
+			int c = compare(k, hi);
+			return c > 0 || (c == 0 && !hiInclusive);
+		}
+
+		private boolean inRange(Object k){
+			return !tooLow(k) && !tooHigh(k);
+		}
+
+		private boolean inClosedRange(Object k){
+			return (!hasLo || compare(k, lo) >= 0) && (!hasHi || compare(k, hi) <= 0);
+		}
+
+		//an inclusive bound of a sub-view must be inside this view, an exclusive one may sit on its edge (as in TreeMap)
+		private boolean inRange(Object k, boolean inclusive){
+			return inclusive ? inRange(k) : inClosedRange(k);
+		}
+
+		private Node<K,V> absLowest(){
+			Node<K,V> node = !hasLo ? WAVLMap.this.first() : higher(lo, loInclusive);
+			return node == null || tooHigh(node.key) ? null : node;
+		}
+
+		private Node<K,V> absHighest(){
+			Node<K,V> node = !hasHi ? WAVLMap.this.last() : lower(hi, hiInclusive);
+			return node == null || tooLow(node.key) ? null : node;
+		}
+
+		private Node<K,V> absLower(Object k, boolean inclusive){
+			if (tooHigh(k)) return absHighest();
+			Node<K,V> node = lower(k, inclusive);
+			return node == null || tooLow(node.key) ? null : node;
+		}
+
+		private Node<K,V> absHigher(Object k, boolean inclusive){
+			if (tooLow(k)) return absLowest();
+			Node<K,V> node = higher(k, inclusive);
+			return node == null || tooHigh(node.key) ? null : node;
+		}
+
+		//first node past the high end / low end, where an iteration stops
+		private Node<K,V> absHighFence(){
+			return !hasHi ? null : higher(hi, !hiInclusive);
+		}
+
+		private Node<K,V> absLowFence(){
+			return !hasLo ? null : lower(lo, !loInclusive);
+		}
+
+		//navigation in the view's own order
+		private Node<K,V> first(){ return descending ? absHighest() : absLowest(); }
+		private Node<K,V> last(){ return descending ? absLowest() : absHighest(); }
+		private Node<K,V> lowerNode(Object k, boolean incl){ return descending ? absHigher(k, incl) : absLower(k, incl); }
+		private Node<K,V> higherNode(Object k, boolean incl){ return descending ? absLower(k, incl) : absHigher(k, incl); }
+
+		@Override
+		public Comparator<? super K> comparator(){
+			return descending ? java.util.Collections.reverseOrder(WAVLMap.this.comparator) : WAVLMap.this.comparator;
+		}
+
+		@Override
+		public boolean containsKey(Object k){
+			return inRange(k) && WAVLMap.this.containsKey(k);
+		}
+
+		@Override
+		public V get(Object k){
+			return inRange(k) ? WAVLMap.this.get(k) : null;
+		}
+
+		@Override
+		public V put(K k, V v){
+			if (!inRange(k)) throw new IllegalArgumentException("key out of range");
+			return WAVLMap.this.put(k, v);
+		}
+
+		@Override
+		public V remove(Object k){
+			return inRange(k) ? WAVLMap.this.remove(k) : null;
+		}
+
+		@Override
+		public int size(){
+			if (!hasLo && !hasHi) return WAVLMap.this.size;
+			int n = 0;
+			for (Iterator<Map.Entry<K,V>> it = entrySet().iterator(); it.hasNext(); it.next()) n++;
+			return n;
+		}
+
+		@Override
+		public boolean isEmpty(){
+			return absLowest() == null;
+		}
+
+		@Override
+		public Set<Map.Entry<K,V>> entrySet(){
+			return new AbstractSet<Map.Entry<K,V>>(){
+				@Override
+				public Iterator<Map.Entry<K,V>> iterator(){
+					return descending ? new EntryIterator(absHighest(), absLowFence(), true)
+							: new EntryIterator(absLowest(), absHighFence(), false);
+				}
+
+				@Override
+				public int size(){
+					return SubMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o){
+					if (!(o instanceof Map.Entry)) return false;
+					Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+					return e.getKey() != null && inRange(e.getKey()) && WAVLMap.this.entrySet().contains(e);
+				}
+
+				@Override
+				public boolean remove(Object o){
+					return contains(o) && WAVLMap.this.entrySet().remove(o);
+				}
+			};
+		}
+
+		@Override public Map.Entry<K,V> firstEntry(){ return export(first()); }
+		@Override public Map.Entry<K,V> lastEntry(){ return export(last()); }
+		@Override public K firstKey(){ return keyOrThrow(first()); }
+		@Override public K lastKey(){ return keyOrThrow(last()); }
+		@Override public Map.Entry<K,V> lowerEntry(K k){ return export(lowerNode(k, false)); }
+		@Override public K lowerKey(K k){ return keyOrNull(lowerNode(k, false)); }
+		@Override public Map.Entry<K,V> floorEntry(K k){ return export(lowerNode(k, true)); }
+		@Override public K floorKey(K k){ return keyOrNull(lowerNode(k, true)); }
+		@Override public Map.Entry<K,V> ceilingEntry(K k){ return export(higherNode(k, true)); }
+		@Override public K ceilingKey(K k){ return keyOrNull(higherNode(k, true)); }
+		@Override public Map.Entry<K,V> higherEntry(K k){ return export(higherNode(k, false)); }
+		@Override public K higherKey(K k){ return keyOrNull(higherNode(k, false)); }
+
+		@Override
+		public Map.Entry<K,V> pollFirstEntry(){
+			Node<K,V> node = first();
+			Map.Entry<K,V> e = export(node);
+			if (node != null) deleteNode(node);
+			return e;
+		}
+
+		@Override
+		public Map.Entry<K,V> pollLastEntry(){
+			Node<K,V> node = last();
+			Map.Entry<K,V> e = export(node);
+			if (node != null) deleteNode(node);
+			return e;
+		}
+
+		@Override
+		public NavigableMap<K,V> descendingMap(){
+			return new SubMap(lo, hasLo, loInclusive, hi, hasHi, hiInclusive, !descending);
+		}
+
+		@Override
+		public NavigableSet<K> navigableKeySet(){
+			return new KeySet<K>(this);
+		}
+
+		@Override
+		public Set<K> keySet(){
+			return navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> descendingKeySet(){
+			return descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive){
+			if (descending) return ((SubMap) descendingMap()).subMap(toKey, toInclusive, fromKey, fromInclusive).descendingMap();
+			if (compare(fromKey, toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+			if (!inRange(fromKey, fromInclusive) || !inRange(toKey, toInclusive)) throw new IllegalArgumentException("key out of range");
+			return new SubMap(fromKey, true, fromInclusive, toKey, true, toInclusive, false);
+		}
+
+		@Override
+		public NavigableMap<K,V> headMap(K toKey, boolean inclusive){
+			if (!inRange(toKey, inclusive)) throw new IllegalArgumentException("key out of range");
+			if (descending) return new SubMap(toKey, true, inclusive, hi, hasHi, hiInclusive, true);
+			return new SubMap(lo, hasLo, loInclusive, toKey, true, inclusive, false);
+		}
+
+		@Override
+		public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive){
+			if (!inRange(fromKey, inclusive)) throw new IllegalArgumentException("key out of range");
+			if (descending) return new SubMap(lo, hasLo, loInclusive, fromKey, true, inclusive, true);
+			return new SubMap(fromKey, true, inclusive, hi, hasHi, hiInclusive, false);
+		}
+
+		@Override public SortedMap<K,V> subMap(K fromKey, K toKey){ return subMap(fromKey, true, toKey, false); }
+		@Override public SortedMap<K,V> headMap(K toKey){ return headMap(toKey, false); }
+		@Override public SortedMap<K,V> tailMap(K fromKey){ return tailMap(fromKey, true); }
+	}
+
+   /**
+	* the navigable key set of a map (or of one of its views)
+	*/
+	private static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+		private final NavigableMap<E,?> m;
+
+		KeySet(NavigableMap<E,?> m){
+			this.m = m;
+		}
+
+		@Override
+		public Iterator<E> iterator(){
+			final Iterator<? extends Map.Entry<E,?>> it = m.entrySet().iterator();
+			return new Iterator<E>(){
+				@Override public boolean hasNext(){ return it.hasNext(); }
+				@Override public E next(){ return it.next().getKey(); }
+				@Override public void remove(){ it.remove(); }
+			};
+		}
+
+		@Override public Iterator<E> descendingIterator(){ return descendingSet().iterator(); }
+		@Override public int size(){ return m.size(); }
+		@Override public boolean isEmpty(){ return m.isEmpty(); }
+		@Override public boolean contains(Object o){ return m.containsKey(o); }
+		@Override public void clear(){ m.clear(); }
+		@Override public E lower(E e){ return m.lowerKey(e); }
+		@Override public E floor(E e){ return m.floorKey(e); }
+		@Override public E ceiling(E e){ return m.ceilingKey(e); }
+		@Override public E higher(E e){ return m.higherKey(e); }
+		@Override public E first(){ return m.firstKey(); }
+		@Override public E last(){ return m.lastKey(); }
+		@Override public Comparator<? super E> comparator(){ return m.comparator(); }
+
+		@Override
+		public E pollFirst(){
+			Map.Entry<E,?> e = m.pollFirstEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		@Override
+		public E pollLast(){
+			Map.Entry<E,?> e = m.pollLastEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		@Override
+		public boolean remove(Object o){
+			if (!m.containsKey(o)) return false;
+			m.remove(o);
+			return true;
+		}
+
+		@Override
+		public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive){
+			return new KeySet<E>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+		}
+
+		@Override public NavigableSet<E> headSet(E toElement, boolean inclusive){ return new KeySet<E>(m.headMap(toElement, inclusive)); }
+		@Override public NavigableSet<E> tailSet(E fromElement, boolean inclusive){ return new KeySet<E>(m.tailMap(fromElement, inclusive)); }
+		@Override public SortedSet<E> subSet(E fromElement, E toElement){ return subSet(fromElement, true, toElement, false); }
+		@Override public SortedSet<E> headSet(E toElement){ return headSet(toElement, false); }
+		@Override public SortedSet<E> tailSet(E fromElement){ return tailSet(fromElement, true); }
+		@Override public NavigableSet<E> descendingSet(){ return new KeySet<E>(m.descendingMap()); }
+	}
+
+	private static boolean eq(Object a, Object b){
+		return a == null ? b == null : a.equals(b);
+	}
+
+	// ---- WAVL rebalancing ----
+
+	private static int rank(Node<?,?> node){
+		return node == null ? -1 : node.rank;
+	}
+
+   /**
+	* Balances the tree after insertion, bottom-up from node.
+	* either rotates around node or promotes the node's parent, according to the situation
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterInsertion(Node<K,V> node){
+		Node<K,V> parent = node.parent;
+		while (parent != null && parent.rank == node.rank){
+			if (node == parent.left){
+				//case 1 - promote
+				if (parent.rank - rank(parent.right) == 1){
+					promote(parent);
+					node = parent;
+					parent = node.parent;
+					continue;
+				}
+				//case 2 - rotate right
+				if (rank(node.right) < rank(node.left)){
+					demote(parent);
+					rotateRight(node);
+				}
+				//case 3 - double rotate
+				else{
+					Node<K,V> axis = node.right;
+					demote(parent);
+					demote(node);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+				}
+			}
+			// up to symmetry
+			else{
+				//case 1 - promote
+				if (parent.rank - rank(parent.left) == 1){
+					promote(parent);
+					node = parent;
+					parent = node.parent;
+					continue;
+				}
+				//case 2 - rotate left
+				if (rank(node.left) < rank(node.right)){
+					demote(parent);
+					rotateLeft(node);
+				}
+				//case 3 - double rotate
+				else{
+					Node<K,V> axis = node.left;
+					demote(parent);
+					demote(node);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+				}
+			}
+			return;
+		}
+	}
+
+   /**
+	* unlinks node from the tree and rebalances.
+	* if node has two children, its successor's mapping is moved into it and the successor is unlinked instead.
+	* returns the node that was actually unlinked.
+	* time complexity: O(log n)
+	*/
+	private Node<K,V> deleteNode(Node<K,V> node){
+		balanceops = 0;
+		modCount++;
+		size--;
+		//node has two children
+		if (node.left != null && node.right != null){
+			Node<K,V> succ = node.right;
+			while (succ.left != null) succ = succ.left;
+			node.key = succ.key;
+			node.value = succ.value;
+			node = succ;
+		}
+		//node has at most one child, which is a leaf - splice it in node's place
+		Node<K,V> child = node.left != null ? node.left : node.right;
+		Node<K,V> parent = node.parent;
+		if (child != null) child.parent = parent;
+		if (parent == null) root = child;
+		else if (node == parent.left) parent.left = child;
+		else parent.right = child;
+		node.parent = node.left = node.right = null;
+		if (parent == null) return node;
+		//not a legal leaf
+		if (parent.left == null && parent.right == null && parent.rank == 1){
+			demote(parent);
+			child = parent;
+			parent = parent.parent;
+		}
+		balanceAfterDeletion(child, parent);
+		return node;
+	}
+
+   /**
+	* Balances the tree after deletion op, bottom-up from node (a child of parent, possibly null).
+	* either rotates around node's brother or demotes.
+	* time complexity: O(log n)-worst case, O(1)- amortized
+	*/
+	private void balanceAfterDeletion(Node<K,V> node, Node<K,V> parent){
+		while (parent != null && parent.rank - rank(node) == 3){
+			// node is right child
+			if (node == parent.right){
+				Node<K,V> brother = parent.left;
+				//case 1
+				if (parent.rank - brother.rank == 2){
+					demote(parent);
+				}
+				//case 2
+				else if (brother.rank - rank(brother.left) == 2 && brother.rank - rank(brother.right) == 2){
+					demote(parent);
+					demote(brother);
+				}
+				//case 3
+				else if (brother.rank - rank(brother.left) == 1){
+					rotateRight(brother);
+					promote(brother);
+					demote(parent);
+					//not a legal leaf
+					if (parent.left == null && parent.right == null) demote(parent);
+					return;
+				}
+				//case 4
+				else{
+					Node<K,V> axis = brother.right;
+					demote(parent);
+					demote(parent);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateLeft(axis);
+					rotateRight(axis);
+					return;
+				}
+			}
+			// up to symmetry
+			else{
+				Node<K,V> brother = parent.right;
+				//case 1
+				if (parent.rank - brother.rank == 2){
+					demote(parent);
+				}
+				//case 2
+				else if (brother.rank - rank(brother.left) == 2 && brother.rank - rank(brother.right) == 2){
+					demote(parent);
+					demote(brother);
+				}
+				//case 3
+				else if (brother.rank - rank(brother.right) == 1){
+					rotateLeft(brother);
+					promote(brother);
+					demote(parent);
+					//not a legal leaf
+					if (parent.left == null && parent.right == null) demote(parent);
+					return;
+				}
+				//case 4
+				else{
+					Node<K,V> axis = brother.left;
+					demote(parent);
+					demote(parent);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					rotateRight(axis);
+					rotateLeft(axis);
+					return;
+				}
+			}
+			node = parent;
+			parent = node.parent;
+		}
+	}
+
+   /**
+	* Performs right rotation around node.
+	* @param node
+	*/
+	private void rotateRight(Node<K,V> node){
+		Node<K,V> parent = node.parent;
+		Node<K,V> grandparent = parent.parent;
+		if (grandparent == null) root = node;
+		else if (grandparent.right == parent) grandparent.right = node;
+		else grandparent.left = node;
+		parent.left = node.right;
+		if (node.right != null) node.right.parent = parent;
+		node.right = parent;
+		parent.parent = node;
+		node.parent = grandparent;
+		balanceops++;
+	}
+
+   /**
+	* Performs left rotation around node.
+	* @param node
+	*/
+	private void rotateLeft(Node<K,V> node){
+		Node<K,V> parent = node.parent;
+		Node<K,V> grandparent = parent.parent;
+		if (grandparent == null) root = node;
+		else if (grandparent.right == parent) grandparent.right = node;
+		else grandparent.left = node;
+		parent.right = node.left;
+		if (node.left != null) node.left.parent = parent;
+		node.left = parent;
+		parent.parent = node;
+		node.parent = grandparent;
+		balanceops++;
+	}
+
+	private void promote(Node<K,V> node){
+		node.rank++;
+		balanceops++;
+	}
+
+	private void demote(Node<K,V> node){
+		node.rank--;
+		balanceops++;
+	}
+
+   /**
+	* a tree node, which is also the map entry handed out by iterators
+	*/
+	static final class Node<K,V> implements Map.Entry<K,V> {
+		K key;
+		V value;
+		Node<K,V> left;
+		Node<K,V> right;
+		Node<K,V> parent;
+		int rank;
+
+	   /**
+		* Leaf Constructor
+		* Rank is 0.
+		*/
+		Node(K key, V value, Node<K,V> parent){
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+		}
+
+		@Override
+		public K getKey(){
+			return key;
+		}
+
+		@Override
+		public V getValue(){
+			return value;
+		}
+
+		@Override
+		public V setValue(V value){
+			V old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+			return eq(key, e.getKey()) && eq(value, e.getValue());
+		}
+
+		@Override
+		public int hashCode(){
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString(){
+			return key + "=" + value;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ *
+ * WAVLTreeMetricsMBean
+ *
+ * The JMX management interface of WAVLTreeMetrics.
+ * Counters are cumulative since the metrics were enabled or last reset.
+ * Shape attributes (height, rank differences) walk the whole tree when read.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public interface WAVLTreeMetricsMBean {
+
+	long getSearches();
+
+	long getInsertions();
+
+	long getDeletions();
+
+	long getPromotions();
+
+	long getDemotions();
+
+	long getSingleRotations();
+
+	long getDoubleRotations();
+
+	/**
+	 * entry d is the number of searches, insertions and deletions that descended through d nodes,
+	 * the last entry also counts all longer descents
+	 */
+	long[] getDescentLengthHistogram();
+
+	double getAverageDescentLength();
+
+	int getSize();
+
+	int getRootRank();
+
+	/**
+	 * number of nodes on the longest root to leaf path, 0 for an empty tree. O(n)
+	 */
+	int getHeight();
+
+	/**
+	 * entry d is the number of child links with rank difference d, for d = 0..3.
+	 * in a valid WAVL tree only entries 1 and 2 are non zero. O(n)
+	 */
+	long[] getRankDifferenceDistribution();
+
+	void reset();
+}
@@ -0,0 +1,181 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *
+ * WAVLTreeMetrics
+ *
+ * Cumulative rebalance and shape metrics of one WAVLTree, exposed as a JMX MBean.
+ * Enabled by WAVLTree.enableMetrics(); while disabled the tree pays one null check per event.
+ * Counters are LongAdders, so updating them from several threads does not contend.
+ * The shape attributes walk the tree in O(n) when they are read, under the tree's read lock
+ * if it has one (ConcurrentWAVLTree), otherwise the tree must not be changed meanwhile.
+ *
+ * Rebalancing done by join, split and the set operations is counted for the tree they run on,
+ * the parallel parts of a set operation run on scratch trees and are not counted.
+ * insertAll and deleteAll count every item they insert or delete. A batch of less than half the tree
+ * is applied item by item and counted like single operations; a larger batch goes through a set operation,
+ * whose rebalancing is not counted. So promotions + demotions + rotations equals the sum of the
+ * returned balanceops only for the item by item paths.
+ * deleteRange and extractRange count the items they remove as deletions.
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+public class WAVLTreeMetrics implements WAVLTreeMetricsMBean {
+
+	private static final int HISTOGRAM_SIZE = 64; //longer descents share the last bucket
+
+	private final WAVLTree tree;
+	private final Lock shapeLock; //held while walking the tree, null if there is none
+
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder deletions = new LongAdder();
+	private final LongAdder promotions = new LongAdder();
+	private final LongAdder demotions = new LongAdder();
+	private final LongAdder singleRotations = new LongAdder();
+	private final LongAdder doubleRotations = new LongAdder();
+	private final LongAdder[] descents = new LongAdder[HISTOGRAM_SIZE];
+	private final LongAdder descentNodes = new LongAdder(); //sum of all descent lengths
+
+	private ObjectName name; //the name registered under, null if not registered
+
+	WAVLTreeMetrics(WAVLTree tree, Lock shapeLock){
+		this.tree = tree;
+		this.shapeLock = shapeLock;
+		for (int d = 0; d < HISTOGRAM_SIZE; d++) descents[d] = new LongAdder();
+	}
+
+	// events, reported by the tree
+	void search(){ searches.increment(); }
+	void insertion(){ insertions.increment(); }
+	void deletion(){ deletions.increment(); }
+	void insertions(long count){ insertions.add(count); }
+	void deletions(long count){ deletions.add(count); }
+	void promotion(){ promotions.increment(); }
+	void demotion(){ demotions.increment(); }
+	void singleRotation(){ singleRotations.increment(); }
+	void doubleRotation(){ doubleRotations.increment(); }
+
+	void descent(int length){
+		descents[Math.min(length, HISTOGRAM_SIZE - 1)].increment();
+		descentNodes.add(length);
+	}
+
+	/**
+	 * public ObjectName register(String name)
+	 *
+	 * registers the metrics in the platform MBean server
+	 * as WAVLTree:type=WAVLTreeMetrics,name=name and returns the object name.
+	 */
+	public synchronized ObjectName register(String name) throws JMException{
+		if (this.name != null) throw new IllegalStateException("already registered as " + this.name);
+		ObjectName objectName = new ObjectName("WAVLTree:type=WAVLTreeMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.name = objectName;
+		return objectName;
+	}
+
+	/**
+	 * public void unregister()
+	 *
+	 * removes the metrics from the platform MBean server, if they were registered.
+	 */
+	public synchronized void unregister() throws JMException{
+		if (name == null) return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		name = null;
+	}
+
+	public long getSearches(){ return searches.sum(); }
+	public long getInsertions(){ return insertions.sum(); }
+	public long getDeletions(){ return deletions.sum(); }
+	public long getPromotions(){ return promotions.sum(); }
+	public long getDemotions(){ return demotions.sum(); }
+	public long getSingleRotations(){ return singleRotations.sum(); }
+	public long getDoubleRotations(){ return doubleRotations.sum(); }
+
+	public long[] getDescentLengthHistogram(){
+		long[] histogram = new long[HISTOGRAM_SIZE];
+		for (int d = 0; d < HISTOGRAM_SIZE; d++) histogram[d] = descents[d].sum();
+		return histogram;
+	}
+
+	public double getAverageDescentLength(){
+		long count = 0;
+		for (LongAdder bucket : descents) count += bucket.sum();
+		return count == 0 ? 0 : (double) descentNodes.sum() / count;
+	}
+
+	public int getSize(){
+		return tree.size();
+	}
+
+	public int getRootRank(){
+		return tree.getRoot().getRank();
+	}
+
+	public int getHeight(){
+		return (int) shape()[0];
+	}
+
+	/**
+	 * entry 0 also counts negative differences and entry 3 all differences above 3,
+	 * external children included.
+	 */
+	public long[] getRankDifferenceDistribution(){
+		return Arrays.copyOfRange(shape(), 1, 5);
+	}
+
+	public void reset(){
+		for (LongAdder adder : new LongAdder[]{ searches, insertions, deletions, promotions, demotions,
+				singleRotations, doubleRotations, descentNodes }) adder.reset();
+		for (LongAdder bucket : descents) bucket.reset();
+	}
+
+   /**
+	* walks the tree once, preorder with an explicit stack.
+	* returns {height, then the number of child links with rank difference 0,1,2,3}.
+	* time complexity: O(n)
+	*/
+	private long[] shape(){
+		long[] shape = new long[5];
+		if (shapeLock != null) shapeLock.lock();
+		try{
+			WAVLTree.WAVLNode[] nodes = new WAVLTree.WAVLNode[HISTOGRAM_SIZE];
+			int[] depths = new int[HISTOGRAM_SIZE];
+			int top = 0;
+			if (!tree.getRoot().isExternal()){
+				nodes[top] = tree.getRoot();
+				depths[top++] = 1;
+			}
+			while (top > 0){
+				WAVLTree.WAVLNode node = nodes[--top];
+				int depth = depths[top];
+				shape[0] = Math.max(shape[0], depth);
+				for (int side = 0; side < 2; side++){
+					WAVLTree.WAVLNode child = side == 0 ? node.getLeft() : node.getRight();
+					shape[1 + Math.max(0, Math.min(3, node.getRank() - child.getRank()))]++;
+					if (child.isExternal()) continue;
+					if (top == nodes.length){
+						nodes = Arrays.copyOf(nodes, top * 2);
+						depths = Arrays.copyOf(depths, top * 2);
+					}
+					nodes[top] = child;
+					depths[top++] = depth + 1;
+				}
+			}
+		}
+		finally{
+			if (shapeLock != null) shapeLock.unlock();
+		}
+		return shape;
+	}
+}
@@ -1,3 +1,31 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
 /**
  *
  * WAVLTree
@@ -15,25 +43,670 @@ public class WAVLTree {
 	private WAVLNode root;
 	private int size; //in order to return size in O(1)
 	private int balanceops; //global variable,counting balance operations
-	private int index; //global variable for info/key to array functions.
+	private int modCount; //number of insertions and deletions, so iterators can detect changes
 	private WAVLNode minFP; //finger pointer to minimal key node.in order to return min in O(1)
 	private WAVLNode maxFP; //finger pointer to maximal key node. to return max in O(1)
+	private WAVLTreeMetrics metrics; //null unless enableMetrics() was called
+	private static final int SNAPSHOT_MAGIC = 0x5741564C; //"WAVL"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER = 24; //magic, version, size, CRC32 of the body, body length
+	private static final int SNAPSHOT_BUFFER = 1 << 20;
+	private static final int FINGER_RATIO = 2; //insertAll and deleteAll use a finger for batches below half the tree, a union or difference above
 	
    /**
 	* create an empty WAVL
 	* with external leaf
 	*/
 	public WAVLTree(){
-		this.root = new WAVLNode(null);
+		this.root = WAVLNode.EXTERNAL;
 		this.size=0;
 		minFP = root;
 		maxFP = root;
 	}
 	
+	/**
+	 * public static WAVLTree fromSorted(int[] keys, String[] infos)
+	 *
+	 * builds a tree of the items (keys[j], infos[j]).
+	 * keys must be strictly increasing (IllegalArgumentException otherwise).
+	 * time complexity: O(n), no rotations
+	 */
+	public static WAVLTree fromSorted(int[] keys, String[] infos){
+		if (keys.length != infos.length) throw new IllegalArgumentException("keys and infos differ in length");
+		return fromSorted(keys.length, Arrays.stream(keys).iterator(), Arrays.asList(infos).iterator());
+	}
+	
+	/**
+	 * public static WAVLTree fromSorted(int n, PrimitiveIterator.OfInt keys, Iterator<String> infos)
+	 *
+	 * builds a tree of the next n items of the two streams, read once, in order.
+	 * keys must be strictly increasing and both streams must have n items (IllegalArgumentException otherwise).
+	 * the tree is built bottom-up with a size-balanced shape and rank = height,
+	 * which always satisfies the WAVL rank rules.
+	 * time complexity: O(n), no rotations, O(log n) recursion depth
+	 */
+	public static WAVLTree fromSorted(int n, PrimitiveIterator.OfInt keys, Iterator<String> infos){
+		if (n < 0) throw new IllegalArgumentException("negative size " + n);
+		WAVLTree tree = new WAVLTree();
+		tree.root = new SortedInput(keys, infos).build(n);
+		tree.size = n;
+		if (n > 0){
+			tree.root.setParent(null);
+			tree.minFP = tree.root;
+			while (!tree.minFP.getLeft().isExternal()) tree.minFP = tree.minFP.getLeft();
+			tree.maxFP = tree.root;
+			while (!tree.maxFP.getRight().isExternal()) tree.maxFP = tree.maxFP.getRight();
+		}
+		return tree;
+	}
+	
+	/**
+	 * reads sorted items and builds subtrees of them in-order
+	 */
+	private static final class SortedInput{
+		private final PrimitiveIterator.OfInt keys;
+		private final Iterator<String> infos;
+		private boolean started;
+		private int lastKey;
+		
+		SortedInput(PrimitiveIterator.OfInt keys, Iterator<String> infos){
+			this.keys = keys;
+			this.infos = infos;
+		}
+		
+		// builds a subtree of the next n items: left half, root, right half
+		WAVLNode build(int n){
+			if (n == 0) return WAVLNode.EXTERNAL;
+			int leftSize = (n - 1) / 2;
+			WAVLNode left = build(leftSize);
+			if (!keys.hasNext() || !infos.hasNext()) throw new IllegalArgumentException("fewer items than the given size");
+			int k = keys.nextInt();
+			if (started && k <= lastKey) throw new IllegalArgumentException("keys not strictly increasing at " + k);
+			started = true;
+			lastKey = k;
+			WAVLNode node = new WAVLNode(k, infos.next());
+			WAVLNode right = build(n - 1 - leftSize);
+			node.setLeft(left);
+			node.setRight(right);
+			if (!left.isExternal()) left.setParent(node);
+			if (!right.isExternal()) right.setParent(node);
+			//sibling heights differ by at most 1, so rank = height gives rank differences of 1 or 2
+			node.setRank(Math.max(left.getRank(), right.getRank()) + 1);
+			node.setSubtreeSize(n);
+			return node;
+		}
+	}
+	
+	/**
+	 * public void writeSnapshot(Path path) throws IOException
+	 *
+	 * writes the items of the tree in key order to a compact binary file, read back by loadSnapshot.
+	 * format: a 24 byte header (magic "WAVL", version, size, CRC32 of the body, body length),
+	 * then for every item the distance of its key from the previous key as a varint,
+	 * and its info as a varint length (0 for null, otherwise 1 + the UTF-8 length) and the UTF-8 bytes.
+	 * the file is written next to path and moved over it when complete, so a crash leaves the old file.
+	 * time complexity: O(n)
+	 */
+	public void writeSnapshot(Path path) throws IOException{
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		long bodyLength = 0;
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			channel.position(SNAPSHOT_HEADER);
+			ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_BUFFER);
+			long previous = Integer.MIN_VALUE - 1L;
+			WAVLNode node = minFP;
+			for (int written = 0; written < size; written++, node = successor(node)){
+				if (buffer.remaining() < 10) bodyLength += flush(channel, buffer, crc); //room for two varints
+				putVarint(buffer, node.getKey() - previous);
+				previous = node.getKey();
+				if (node.getInfo() == null){
+					putVarint(buffer, 0);
+					continue;
+				}
+				byte[] info = node.getInfo().getBytes(StandardCharsets.UTF_8);
+				putVarint(buffer, info.length + 1L);
+				if (info.length > buffer.remaining()){
+					bodyLength += flush(channel, buffer, crc);
+					if (info.length > buffer.capacity()){ //too long to buffer, written as is
+						bodyLength += write(channel, ByteBuffer.wrap(info), crc);
+						continue;
+					}
+				}
+				buffer.put(info);
+			}
+			bodyLength += flush(channel, buffer, crc);
+			ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+			header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(size).putInt((int) crc.getValue()).putLong(bodyLength);
+			header.flip();
+			while (header.hasRemaining()) channel.write(header, header.position());
+			channel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * public static WAVLTree loadSnapshot(Path path) throws IOException
+	 *
+	 * reads a file written by writeSnapshot. the file is memory mapped (in windows of 256MB),
+	 * its checksum is verified first, and then the tree is built by fromSorted straight from the mapped records.
+	 * throws IOException if the file is not a snapshot or is corrupt.
+	 * time complexity: O(n), no rotations
+	 */
+	public static WAVLTree loadSnapshot(Path path) throws IOException{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+			while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) throw new EOFException("no snapshot header in " + path);
+			header.flip();
+			if (header.getInt() != SNAPSHOT_MAGIC) throw new IOException(path + " is not a WAVLTree snapshot");
+			if (header.getInt() != SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version in " + path);
+			int n = header.getInt();
+			int checksum = header.getInt();
+			long bodyLength = header.getLong();
+			if (n < 0 || bodyLength != channel.size() - SNAPSHOT_HEADER) throw new IOException("truncated snapshot " + path);
+			if (checksum != (int) new SnapshotReader(channel).checksum()) throw new IOException("checksum mismatch in " + path);
+			SnapshotReader reader = new SnapshotReader(channel);
+			try{
+				WAVLTree tree = fromSorted(n, reader.keys(), reader.infos());
+				if (reader.hasNext()) throw new IOException("trailing bytes in snapshot " + path);
+				return tree;
+			}
+			catch (UncheckedIOException e){
+				throw e.getCause();
+			}
+			catch (IllegalArgumentException e){
+				throw new IOException("corrupt snapshot " + path, e);
+			}
+		}
+	}
+	
+	// writes what was put in the buffer and empties it, returns the number of bytes written
+	private static int flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException{
+		buffer.flip();
+		int length = write(channel, buffer, crc);
+		buffer.clear();
+		return length;
+	}
+	
+	// writes the remaining bytes of data to the channel and the checksum, returns their number
+	private static int write(FileChannel channel, ByteBuffer data, CRC32 crc) throws IOException{
+		int length = data.remaining();
+		crc.update(data.duplicate());
+		while (data.hasRemaining()) channel.write(data);
+		return length;
+	}
+	
+	// unsigned LEB128: 7 bits per byte, lowest first, the high bit set on all but the last byte
+	private static void putVarint(ByteBuffer buffer, long value){
+		while (value >= 0x80){
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	/**
+	 * reads the body of a snapshot through memory mapped windows of the file.
+	 * keys() and infos() are views for fromSorted, which reads a key and then its info, item by item.
+	 */
+	private static final class SnapshotReader{
+		private static final long WINDOW = 1L << 28;
+		
+		private final FileChannel channel;
+		private final long end;
+		private long next = SNAPSHOT_HEADER; //file offset of the next window
+		private ByteBuffer window = ByteBuffer.allocate(0);
+		private long previous = Integer.MIN_VALUE - 1L; //the last key read
+		private byte[] bytes = new byte[64];
+		
+		SnapshotReader(FileChannel channel) throws IOException{
+			this.channel = channel;
+			this.end = channel.size();
+		}
+		
+		// CRC32 of the whole body
+		long checksum() throws IOException{
+			CRC32 crc = new CRC32();
+			while (hasNext()){
+				map();
+				crc.update(window);
+			}
+			return crc.getValue();
+		}
+		
+		boolean hasNext(){
+			return window.hasRemaining() || next < end;
+		}
+		
+		private void map() throws IOException{
+			if (next >= end) throw new EOFException("snapshot ends in the middle of an item");
+			long length = Math.min(WINDOW, end - next);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, next, length);
+			window = mapped;
+			next += length;
+		}
+		
+		private long varint() throws IOException{
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7){
+				if (!window.hasRemaining()) map();
+				byte b = window.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+			throw new IOException("corrupt varint in snapshot");
+		}
+		
+		int key() throws IOException{
+			long delta = varint();
+			if (delta <= 0 || previous + delta > Integer.MAX_VALUE) throw new IOException("corrupt key in snapshot");
+			previous += delta;
+			return (int) previous;
+		}
+		
+		String info() throws IOException{
+			long length = varint() - 1;
+			if (length < 0) return null;
+			if (length > window.remaining() + (end - next)) throw new IOException("corrupt info length in snapshot");
+			if (length > bytes.length) bytes = new byte[(int) Math.max(length, bytes.length * 2L)];
+			for (int read = 0; read < length; ){
+				if (!window.hasRemaining()) map();
+				int chunk = (int) Math.min(length - read, window.remaining());
+				window.get(bytes, read, chunk);
+				read += chunk;
+			}
+			return new String(bytes, 0, (int) length, StandardCharsets.UTF_8);
+		}
+		
+		PrimitiveIterator.OfInt keys(){
+			return new PrimitiveIterator.OfInt(){
+				public boolean hasNext(){ return SnapshotReader.this.hasNext(); }
+				public int nextInt(){
+					try{
+						return key();
+					}
+					catch (IOException e){
+						throw new UncheckedIOException(e);
+					}
+				}
+			};
+		}
+		
+		Iterator<String> infos(){
+			return new Iterator<String>(){
+				public boolean hasNext(){ return SnapshotReader.this.hasNext(); }
+				public String next(){
+					try{
+						return info();
+					}
+					catch (IOException e){
+						throw new UncheckedIOException(e);
+					}
+				}
+			};
+		}
+	}
+	
+	/**
+	 * public static WAVLTree join(WAVLTree left, int pivotKey, String pivotInfo, WAVLTree right)
+	 *
+	 * returns a tree with all items of left, the item (pivotKey, pivotInfo) and all items of right.
+	 * every key of left must be smaller than pivotKey and every key of right larger
+	 * (IllegalArgumentException otherwise).
+	 * the nodes of left and right are reused, both trees are left empty.
+	 * time complexity: O(|rank(left) - rank(right)| + 1) = O(log n)
+	 */
+	public static WAVLTree join(WAVLTree left, int pivotKey, String pivotInfo, WAVLTree right){
+		if (left == right) throw new IllegalArgumentException("cannot join a tree with itself");
+		if (!left.empty() && left.maxFP.getKey() >= pivotKey) throw new IllegalArgumentException("left has a key >= " + pivotKey);
+		if (!right.empty() && right.minFP.getKey() <= pivotKey) throw new IllegalArgumentException("right has a key <= " + pivotKey);
+		WAVLTree tree = new WAVLTree();
+		WAVLNode pivot = new WAVLNode(pivotKey, pivotInfo);
+		tree.root = tree.link(left.root, pivot, right.root);
+		tree.size = left.size + 1 + right.size;
+		tree.minFP = left.empty() ? pivot : left.minFP;
+		tree.maxFP = right.empty() ? pivot : right.maxFP;
+		left.clear();
+		right.clear();
+		return tree;
+	}
+	
+	/**
+	 * public WAVLTree[] split(int k)
+	 *
+	 * splits the tree by k: returns {a tree of the items with keys < k, a tree of the items with keys >= k}.
+	 * the nodes are reused, this tree is left empty.
+	 * time complexity: O(log n), the joins along the search path sum to O(log n) by their rank differences
+	 */
+	public WAVLTree[] split(int k){
+		WAVLNode[] parts = splitNode(root, k);
+		if (parts[1] != null) parts[2] = link(WAVLNode.EXTERNAL, parts[1], parts[2]);
+		WAVLTree[] trees = new WAVLTree[]{ withRoot(parts[0]), withRoot(parts[2]) };
+		clear();
+		return trees;
+	}
+
+	/**
+	 * public int deleteRange(int lo, int hi)
+	 *
+	 * deletes all items with lo <= key <= hi, and returns the number of items deleted.
+	 * the range is cut out as one subtree, its nodes are never visited.
+	 * time complexity: O(log n)
+	 */
+	public int deleteRange(int lo, int hi){
+		return cutRange(lo, hi).getSubtreeSize();
+	}
+
+	/**
+	 * public WAVLTree extractRange(int lo, int hi)
+	 *
+	 * removes all items with lo <= key <= hi from this tree, and returns them as a new tree.
+	 * the nodes are reused, not copied.
+	 * time complexity: O(log n)
+	 */
+	public WAVLTree extractRange(int lo, int hi){
+		return withRoot(cutRange(lo, hi));
+	}
+
+	/**
+	 * cuts the items with lo <= key <= hi out of the tree and returns the root (with no parent) of their subtree.
+	 * splits at lo and at hi, then joins the two outer parts back.
+	 * time complexity: O(log n)
+	 */
+	private WAVLNode cutRange(int lo, int hi){
+		if (lo > hi || empty() || hi < minFP.getKey() || lo > maxFP.getKey()) return WAVLNode.EXTERNAL;
+		WAVLNode[] low = splitNode(root, lo);
+		WAVLNode rest = low[1] == null ? low[2] : link(WAVLNode.EXTERNAL, low[1], low[2]);
+		WAVLNode[] high = splitNode(rest, hi);
+		WAVLNode range = high[1] == null ? high[0] : link(high[0], high[1], WAVLNode.EXTERNAL);
+		root = link(low[0], high[2]);
+		size -= range.getSubtreeSize();
+		if (metrics != null) metrics.deletions(range.getSubtreeSize());
+		if (root.isExternal()) minFP = maxFP = root;
+		else{
+			if (low[0].isExternal()){ //the minimum was cut out
+				minFP = root;
+				while (!minFP.getLeft().isExternal()) minFP = minFP.getLeft();
+			}
+			if (high[2].isExternal()){ //the maximum was cut out
+				maxFP = root;
+				while (!maxFP.getRight().isExternal()) maxFP = maxFP.getRight();
+			}
+		}
+		modCount++;
+		return range;
+	}
+	
+	/**
+	 * splits the subtree of node (whose parent is null) into
+	 * {root of the keys < k, the node with key k or null, root of the keys > k}.
+	 * walks down the search path of k and joins the pieces on the way back.
+	 * time complexity: O(log n)
+	 */
+	private WAVLNode[] splitNode(WAVLNode node, int k){
+		if (node.isExternal()) return new WAVLNode[]{ WAVLNode.EXTERNAL, null, WAVLNode.EXTERNAL };
+		WAVLNode left = detach(node.getLeft());
+		WAVLNode right = detach(node.getRight());
+		if (k == node.getKey()) return new WAVLNode[]{ left, node, right };
+		if (k < node.getKey()){
+			WAVLNode[] parts = splitNode(left, k);
+			parts[2] = link(parts[2], node, right);
+			return parts;
+		}
+		WAVLNode[] parts = splitNode(right, k);
+		parts[0] = link(left, node, parts[0]);
+		return parts;
+	}
+	
+	/**
+	 * joins the subtrees left < right (roots with no parent) without a pivot:
+	 * the maximum of left is cut out and used as the pivot.
+	 * time complexity: O(log n)
+	 */
+	private WAVLNode link(WAVLNode left, WAVLNode right){
+		if (left.isExternal()) return right;
+		if (right.isExternal()) return left;
+		WAVLNode[] parts = splitLast(left);
+		return link(parts[0], parts[1], right);
+	}
+	
+	/**
+	 * splits the subtree of node (whose parent is null) into {root of all keys but the maximum, the maximal node}.
+	 * time complexity: O(log n)
+	 */
+	private WAVLNode[] splitLast(WAVLNode node){
+		WAVLNode left = detach(node.getLeft());
+		WAVLNode right = detach(node.getRight());
+		if (right.isExternal()) return new WAVLNode[]{ left, node };
+		WAVLNode[] parts = splitLast(right);
+		parts[0] = link(left, node, parts[0]);
+		return parts;
+	}
+	
+	/**
+	 * public static WAVLTree union(WAVLTree a, WAVLTree b)
+	 *
+	 * returns a tree with the items of both a and b (for a key in both, the info of a is kept),
+	 * computed in parallel on the common ForkJoinPool. the nodes of a and b are reused, both are left empty.
+	 * time complexity: O(m log(n/m + 1)) work, m <= n the sizes of the two trees, O(log^2 n) span
+	 */
+	public static WAVLTree union(WAVLTree a, WAVLTree b){
+		return union(a, b, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * public static WAVLTree union(WAVLTree a, WAVLTree b, ForkJoinPool pool)
+	 *
+	 * union(a, b), computed on pool.
+	 */
+	public static WAVLTree union(WAVLTree a, WAVLTree b, ForkJoinPool pool){
+		return setOperation(SetOp.UNION, a, b, pool);
+	}
+	
+	/**
+	 * public static WAVLTree intersection(WAVLTree a, WAVLTree b)
+	 *
+	 * returns a tree with the items of a whose keys are also in b,
+	 * computed in parallel on the common ForkJoinPool. the nodes of a are reused, a and b are left empty.
+	 * time complexity: O(m log(n/m + 1)) work, m <= n the sizes of the two trees, O(log^2 n) span
+	 */
+	public static WAVLTree intersection(WAVLTree a, WAVLTree b){
+		return intersection(a, b, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * public static WAVLTree intersection(WAVLTree a, WAVLTree b, ForkJoinPool pool)
+	 *
+	 * intersection(a, b), computed on pool.
+	 */
+	public static WAVLTree intersection(WAVLTree a, WAVLTree b, ForkJoinPool pool){
+		return setOperation(SetOp.INTERSECTION, a, b, pool);
+	}
+	
+	/**
+	 * public static WAVLTree difference(WAVLTree a, WAVLTree b)
+	 *
+	 * returns a tree with the items of a whose keys are not in b,
+	 * computed in parallel on the common ForkJoinPool. the nodes of a are reused, a and b are left empty.
+	 * time complexity: O(m log(n/m + 1)) work, m <= n the sizes of the two trees, O(log^2 n) span
+	 */
+	public static WAVLTree difference(WAVLTree a, WAVLTree b){
+		return difference(a, b, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * public static WAVLTree difference(WAVLTree a, WAVLTree b, ForkJoinPool pool)
+	 *
+	 * difference(a, b), computed on pool.
+	 */
+	public static WAVLTree difference(WAVLTree a, WAVLTree b, ForkJoinPool pool){
+		return setOperation(SetOp.DIFFERENCE, a, b, pool);
+	}
+	
+	private static WAVLTree setOperation(SetOp op, WAVLTree a, WAVLTree b, ForkJoinPool pool){
+		if (a == b) throw new IllegalArgumentException("both operands are the same tree");
+		SetOpTask task = new SetOpTask(op, a.root, b.root);
+		WAVLTree result = withRoot(pool.invoke(task));
+		result.balanceops = task.scratch.balanceops; //rebalancing done by all the joins
+		a.clear();
+		b.clear();
+		return result;
+	}
+	
+	private enum SetOp { UNION, INTERSECTION, DIFFERENCE }
+	
+	/**
+	 * one step of a divide and conquer set operation on two subtrees (roots with no parent):
+	 * split the second subtree by the first one's root key, solve the two halves (in parallel
+	 * above SEQUENTIAL_CUTOFF nodes) and join the results.
+	 * each task works on its own nodes and uses its own scratch tree for rotations.
+	 */
+	private static final class SetOpTask extends RecursiveTask<WAVLNode>{
+		private static final int SEQUENTIAL_CUTOFF = 4096; //below this many nodes forking costs more than it saves
+		private static final long serialVersionUID = 1L;
+		
+		private final SetOp op;
+		private final WAVLNode a;
+		private final WAVLNode b;
+		private final WAVLTree scratch = new WAVLTree();
+		
+		SetOpTask(SetOp op, WAVLNode a, WAVLNode b){
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+		
+		@Override
+		protected WAVLNode compute(){
+			return solve(a, b);
+		}
+		
+		private WAVLNode solve(WAVLNode a, WAVLNode b){
+			if (a.isExternal()) return op == SetOp.UNION ? b : WAVLNode.EXTERNAL;
+			if (b.isExternal()) return op == SetOp.INTERSECTION ? WAVLNode.EXTERNAL : a;
+			//difference splits a by b's root, the others split b by a's root
+			boolean sequential = a.getSubtreeSize() + b.getSubtreeSize() < SEQUENTIAL_CUTOFF;
+			WAVLNode pivot = op == SetOp.DIFFERENCE ? b : a;
+			WAVLNode other = op == SetOp.DIFFERENCE ? a : b;
+			WAVLNode pivotLeft = detach(pivot.getLeft());
+			WAVLNode pivotRight = detach(pivot.getRight());
+			WAVLNode[] parts = scratch.splitNode(other, pivot.getKey());
+			WAVLNode left, right;
+			if (sequential){
+				left = op == SetOp.DIFFERENCE ? solve(parts[0], pivotLeft) : solve(pivotLeft, parts[0]);
+				right = op == SetOp.DIFFERENCE ? solve(parts[2], pivotRight) : solve(pivotRight, parts[2]);
+			}
+			else{
+				SetOpTask leftTask = op == SetOp.DIFFERENCE ? new SetOpTask(op, parts[0], pivotLeft) : new SetOpTask(op, pivotLeft, parts[0]);
+				leftTask.fork();
+				right = op == SetOp.DIFFERENCE ? solve(parts[2], pivotRight) : solve(pivotRight, parts[2]);
+				left = leftTask.join();
+				scratch.balanceops += leftTask.scratch.balanceops;
+			}
+			switch (op){
+				case UNION: return scratch.link(left, pivot, right); //a's node is kept, parts[1] of b is dropped
+				case INTERSECTION: return parts[1] != null ? scratch.link(left, pivot, right) : scratch.link(left, right);
+				default: return scratch.link(left, right); //the key is in b, drop it
+			}
+		}
+	}
+	
+	// makes node the root of its own subtree
+	private static WAVLNode detach(WAVLNode node){
+		if (!node.isExternal()) node.setParent(null);
+		return node;
+	}
+	
+	/**
+	 * joins the subtrees left < pivot < right (roots with no parent) into one WAVL subtree and returns its root.
+	 * pivot is hung on the spine of the higher-ranked subtree, at the first node whose rank is at most
+	 * one above the other subtree, then insertion rebalancing fixes a possible 0-child above it.
+	 * uses this tree's root field while rotating, and keeps subtree sizes.
+	 * time complexity: O(|rank(left) - rank(right)| + 1)
+	 */
+	private WAVLNode link(WAVLNode left, WAVLNode pivot, WAVLNode right){
+		pivot.setParent(null);
+		if (Math.abs(left.getRank() - right.getRank()) <= 1){
+			setChildren(pivot, left, right);
+			pivot.setRank(Math.max(left.getRank(), right.getRank()) + 1);
+			return pivot;
+		}
+		boolean leftHigher = left.getRank() > right.getRank();
+		WAVLNode low = leftHigher ? right : left;
+		root = leftHigher ? left : right;
+		//walk down the facing spine of the higher subtree
+		WAVLNode parent = null;
+		WAVLNode node = root;
+		while (node.getRank() > low.getRank() + 1){
+			parent = node;
+			node = leftHigher ? node.getRight() : node.getLeft();
+		}
+		if (leftHigher){
+			setChildren(pivot, node, low);
+			parent.setRight(pivot);
+		}
+		else{
+			setChildren(pivot, low, node);
+			parent.setLeft(pivot);
+		}
+		pivot.setParent(parent);
+		pivot.setRank(node.getRank() + 1);
+		updateSizes(parent, low.getSubtreeSize() + 1);
+		BalanceAfterInsertion(pivot);
+		return root;
+	}
+	
+	// makes left and right the children of node and recomputes its subtree size
+	private static void setChildren(WAVLNode node, WAVLNode left, WAVLNode right){
+		node.setLeft(left);
+		node.setRight(right);
+		if (!left.isExternal()) left.setParent(node);
+		if (!right.isExternal()) right.setParent(node);
+		resize(node);
+	}
+	
+	// a tree over the subtree of node (whose parent is null)
+	private static WAVLTree withRoot(WAVLNode node){
+		WAVLTree tree = new WAVLTree();
+		if (node.isExternal()) return tree;
+		tree.root = node;
+		tree.size = node.getSubtreeSize();
+		tree.minFP = node;
+		while (!tree.minFP.getLeft().isExternal()) tree.minFP = tree.minFP.getLeft();
+		tree.maxFP = node;
+		while (!tree.maxFP.getRight().isExternal()) tree.maxFP = tree.maxFP.getRight();
+		return tree;
+	}
+	
+	// empties the tree, its nodes now belong to another tree
+	private void clear(){
+		root = WAVLNode.EXTERNAL;
+		minFP = maxFP = root;
+		size = 0;
+		modCount++;
+	}
+	
 	public WAVLNode getRoot() {
 		return this.root;
 	}
 	
+	/**
+	 * public WAVLTreeMetrics enableMetrics()
+	 *
+	 * starts counting searches, descents, promotions, demotions and rotations of this tree
+	 * and returns the metrics, the same object on later calls. register() exposes them over JMX.
+	 * time complexity: O(1)
+	 */
+	public WAVLTreeMetrics enableMetrics(){
+		return enableMetrics(null);
+	}
+	
+	// enableMetrics(), with a lock to hold while the metrics walk the tree
+	WAVLTreeMetrics enableMetrics(Lock shapeLock){
+		if (metrics == null) metrics = new WAVLTreeMetrics(this, shapeLock);
+		return metrics;
+	}
+	
 	/**
 	 * public boolean empty()
 	 *
@@ -52,29 +725,27 @@ public class WAVLTree {
      * time complexity: O(log n), n=number of tree nodes
      */
 	public String search(int k){
-		if (this.empty())return null;
-		WAVLNode parent = findParent(this.root, k);
-		if (this.root.getKey() == k) return this.root.getInfo();
-		if (!parent.getRight().isExternal() && parent.getRight().getKey() == k) return parent.getRight().getInfo();
-		if (!parent.getLeft().isExternal() && parent.getLeft().getKey() == k) return parent.getLeft().getInfo();	
-		return null;
+		if (metrics != null) metrics.search();
+		WAVLNode node = find(k);
+		return node == null ? null : node.getInfo();
 	}
 	
 	/** 
-	 * returns the parent of an item with key k if it exists in the tree
+	 * returns the node with key k if it exists in the tree
      * otherwise, returns null
+     * a single iterative descent from the root
      * time complexity: O(log n), n=number of tree nodes
      */
-	private WAVLNode findParent(WAVLNode node,int k){
-		if(node.isExternal())
-		   {
-			   return node.getParent();
-		   }
-		   if(k==node.getKey())
-			   return node.getParent();
-		   if(k>node.getKey())
-			   return findParent(node.getRight(),k);
-		   return findParent(node.getLeft(),k);
+	private WAVLNode find(int k){
+		WAVLNode node = root;
+		int visited = 0;
+		while (!node.isExternal()){
+			visited++;
+			if (k == node.getKey()) break;
+			node = k < node.getKey() ? node.getLeft() : node.getRight();
+		}
+		if (metrics != null) metrics.descent(visited);
+		return node.isExternal() ? null : node;
 	}
 	
    /**
@@ -108,19 +779,14 @@ public class WAVLTree {
 	}
 	
 	// update finger pointers after deletion
+	// a minimum with a right child keeps its node: deleteInitial moves the child's item into it (same for maximum)
 	private void deleteUpdateFP(WAVLNode oldNode){
 		if (size == 0) {
-			maxFP = minFP = new WAVLNode(null);
+			maxFP = minFP = WAVLNode.EXTERNAL;
 		}
 		else{
-			if (oldNode.getKey() == minFP.getKey()){
-				if (minFP.getRight().isExternal()) minFP = minFP.getParent();
-				else minFP = minFP.getRight();
-			}
-			if (oldNode.getKey() == maxFP.getKey()){
-				if (maxFP.getLeft().isExternal()) maxFP = maxFP.getParent();
-				else maxFP = maxFP.getLeft();
-			}
+			if (oldNode == minFP && minFP.getRight().isExternal()) minFP = minFP.getParent();
+			if (oldNode == maxFP && maxFP.getLeft().isExternal()) maxFP = maxFP.getParent();
 		}
 	}
 			
@@ -129,62 +795,283 @@ public class WAVLTree {
 	*
 	* Returns a sorted array which contains all keys in the tree,
 	* or an empty array if the tree is empty.
+	* walks the tree in-order from minFP along successors, using no shared state.
 	* time complexity: O(n)
 	*/
 	public int[] keysToArray(){
 		int[] arr = new int[this.size()];
-		this.index=0;
-		if(!root.isExternal()) keysToArray(arr,root);
+		int i = 0;
+		for (WAVLNode node = minFP; i < arr.length; node = successor(node)) arr[i++] = node.getKey();
 		return arr;	
 	}
 	
-	/**
-	 * private void keysToArray(int[] arr,WAVLNode node)
-	 * 
-	 * inner function for keysToArray()
-	 * build recursively the keys array
-	 * go over the tree in-order
-	 * time complexity: O(n)
-	 */
-	private void keysToArray(int[] arr,WAVLNode node){
-		if(!(node.isExternal())){
-			keysToArray(arr,node.getLeft());// in-order
-			arr[index]=node.getKey();
-			index++;
-			keysToArray(arr,node.getRight());
-		}
-	}
-	
    /**
 	* public String[] infoToArray()
 	*
 	* Returns an array which contains all info in the tree,
 	* sorted by their respective keys,
 	* or an empty array if the tree is empty.
+	* walks the tree in-order from minFP along successors, using no shared state.
 	* time complexity: O(n)
 	*/
 	public String[] infoToArray(){
 		String[] arr = new String[this.size()];
-		this.index=0;
-		if(!root.isExternal()) infoToArray(arr,root);
+		int i = 0;
+		for (WAVLNode node = minFP; i < arr.length; node = successor(node)) arr[i++] = node.getInfo();
 		return arr;	
 	}
 	
-	/**
-	 * private void infoToArray(String[] arr,WAVLNode node)
-	 * 
-	 * inner function for infoToArray()
-	 * build recursively the info array
-	 * go over the tree in-order
-	 * time complexity: O(n)
-	 */
-	private void infoToArray(String[] arr,WAVLNode node){
-		if(!(node.isExternal())){
-			infoToArray(arr,node.getLeft());// in-order
-			arr[index]=node.getInfo();
-			index++;
-			infoToArray(arr,node.getRight());
+   /**
+	* public FrozenWAVLIndex freeze()
+	*
+	* returns a read-only copy of the tree laid out for lookups, see FrozenWAVLIndex.
+	* the tree is not changed, and can be dropped if only the copy is read from now on.
+	* time complexity: O(n)
+	*/
+	public FrozenWAVLIndex freeze(){
+		return new FrozenWAVLIndex(size, iterator());
+	}
+	
+   /**
+	* public WAVLIterator iterator()
+	*
+	* Returns an iterator over the keys in ascending order, starting at minFP.
+	* time complexity: O(1) to create, O(n) for a full iteration, O(1) extra memory
+	*/
+	public WAVLIterator iterator(){
+		return new WAVLIterator(minFP.isExternal() ? null : minFP, true, Integer.MAX_VALUE);
+	}
+	
+   /**
+	* public WAVLIterator descendingIterator()
+	*
+	* Returns an iterator over the keys in descending order, starting at maxFP.
+	* time complexity: O(1) to create, O(n) for a full iteration, O(1) extra memory
+	*/
+	public WAVLIterator descendingIterator(){
+		return new WAVLIterator(maxFP.isExternal() ? null : maxFP, false, Integer.MIN_VALUE);
+	}
+	
+   /**
+	* public WAVLIterator range(int lo, int hi)
+	*
+	* Returns an iterator over the keys k with lo <= k <= hi, in ascending order.
+	* starts at minFP when lo is below the minimal key, otherwise at the first key >= lo.
+	* time complexity: O(log n + k), k=number of keys returned, O(1) extra memory
+	*/
+	public WAVLIterator range(int lo, int hi){
+		WAVLNode first;
+		if (empty() || lo > hi) first = null;
+		else if (lo <= minFP.getKey()) first = minFP;
+		else first = ceilingNode(lo);
+		return new WAVLIterator(first, true, hi);
+	}
+	
+   /**
+	* public WAVLIterator descendingRange(int lo, int hi)
+	*
+	* Returns an iterator over the keys k with lo <= k <= hi, in descending order.
+	* starts at maxFP when hi is above the maximal key, otherwise at the last key <= hi.
+	* time complexity: O(log n + k), k=number of keys returned, O(1) extra memory
+	*/
+	public WAVLIterator descendingRange(int lo, int hi){
+		WAVLNode first;
+		if (empty() || lo > hi) first = null;
+		else if (hi >= maxFP.getKey()) first = maxFP;
+		else first = floorNode(hi);
+		return new WAVLIterator(first, false, lo);
+	}
+	
+   /**
+	* public Spliterator.OfInt spliterator()
+	*
+	* Returns a spliterator over the keys in ascending order (ORDERED, SORTED, DISTINCT, SIZED, SUBSIZED).
+	* it covers a range of in-order positions, and trySplit halves that range:
+	* the prefix keeps the current node, the rest starts at the node of the middle position,
+	* found by select on the subtree sizes. no arrays are built.
+	* time complexity: O(log n) per split, O(1) amortized per key
+	*/
+	public Spliterator.OfInt spliterator(){
+		return new KeySpliterator(minFP.isExternal() ? null : minFP, 0, size);
+	}
+	
+   /**
+	* public IntStream keyStream()
+	*
+	* Returns a sequential stream of the keys in ascending order, without boxing.
+	* call parallel() on it to split the work over the tree's subtrees.
+	* the tree must not be changed while the stream runs (ConcurrentModificationException).
+	*/
+	public IntStream keyStream(){
+		return StreamSupport.intStream(spliterator(), false);
+	}
+	
+   /**
+	* public Stream<WAVLNode> stream()
+	*
+	* Returns a sequential stream of the nodes in ascending key order,
+	* for reading both key and info. splits like keyStream().
+	* the tree must not be changed while the stream runs (ConcurrentModificationException).
+	* the nodes are the tree's own, read them in the stream: a later delete may move another item into a node.
+	*/
+	public Stream<WAVLNode> stream(){
+		return StreamSupport.stream(new NodeSpliterator(minFP.isExternal() ? null : minFP, 0, size), false);
+	}
+	
+   /**
+	* public Finger fingerAtMax()
+	*
+	* Returns a finger (cursor) placed at the maximal key, for inserts of keys near the maximum.
+	* time complexity: O(1)
+	*/
+	public Finger fingerAtMax(){
+		return new Finger(maxFP);
+	}
+	
+   /**
+	* public Finger fingerAtMin()
+	*
+	* Returns a finger (cursor) placed at the minimal key, for operations near the minimum.
+	* time complexity: O(1)
+	*/
+	public Finger fingerAtMin(){
+		return new Finger(minFP);
+	}
+	
+   /**
+	* returns the node with the smallest key >= k, or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	private WAVLNode ceilingNode(int k){
+		WAVLNode best = null;
+		WAVLNode node = root;
+		int visited = 0;
+		while (!node.isExternal()){
+			visited++;
+			if (k == node.getKey()){
+				best = node;
+				break;
+			}
+			if (k < node.getKey()){
+				best = node;
+				node = node.getLeft();
+			}
+			else node = node.getRight();
+		}
+		if (metrics != null) metrics.descent(visited);
+		return best;
+	}
+	
+   /**
+	* returns the node with the largest key <= k, or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	private WAVLNode floorNode(int k){
+		WAVLNode best = null;
+		WAVLNode node = root;
+		int visited = 0;
+		while (!node.isExternal()){
+			visited++;
+			if (k == node.getKey()){
+				best = node;
+				break;
+			}
+			if (k > node.getKey()){
+				best = node;
+				node = node.getRight();
+			}
+			else node = node.getLeft();
+		}
+		if (metrics != null) metrics.descent(visited);
+		return best;
+	}
+	
+   /**
+	* returns the node with the largest key < k, or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	private WAVLNode lowerNode(int k){
+		WAVLNode best = null;
+		WAVLNode node = root;
+		int visited = 0;
+		while (!node.isExternal()){
+			visited++;
+			if (k > node.getKey()){
+				best = node;
+				node = node.getRight();
+			}
+			else node = node.getLeft();
 		}
+		if (metrics != null) metrics.descent(visited);
+		return best;
+	}
+	
+   /**
+	* returns the node with the smallest key > k, or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	private WAVLNode higherNode(int k){
+		WAVLNode best = null;
+		WAVLNode node = root;
+		int visited = 0;
+		while (!node.isExternal()){
+			visited++;
+			if (k < node.getKey()){
+				best = node;
+				node = node.getLeft();
+			}
+			else node = node.getRight();
+		}
+		if (metrics != null) metrics.descent(visited);
+		return best;
+	}
+	
+   /**
+	* public WAVLNode floor(int k)
+	*
+	* returns the item with the largest key <= k as a new node outside the tree,
+	* or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	public WAVLNode floor(int k){
+		if (metrics != null) metrics.search();
+		return copyOf(floorNode(k));
+	}
+	
+   /**
+	* public WAVLNode ceiling(int k)
+	*
+	* returns the item with the smallest key >= k as a new node outside the tree,
+	* or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	public WAVLNode ceiling(int k){
+		if (metrics != null) metrics.search();
+		return copyOf(ceilingNode(k));
+	}
+	
+   /**
+	* public WAVLNode lower(int k)
+	*
+	* returns the item with the largest key < k as a new node outside the tree,
+	* or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	public WAVLNode lower(int k){
+		if (metrics != null) metrics.search();
+		return copyOf(lowerNode(k));
+	}
+	
+   /**
+	* public WAVLNode higher(int k)
+	*
+	* returns the item with the smallest key > k as a new node outside the tree,
+	* or null if there is none
+	* time complexity: O(log n), one descent
+	*/
+	public WAVLNode higher(int k){
+		if (metrics != null) metrics.search();
+		return copyOf(higherNode(k));
 	}
 	
 	/**
@@ -197,94 +1084,249 @@ public class WAVLTree {
 		return this.size;
 	}
 	
+	/**
+	 * public int select(int i)
+	 *
+	 * Returns the i'th smallest key in the tree (0-based, i.e. keysToArray()[i]).
+	 * throws IndexOutOfBoundsException if i is not in [0, size()).
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	public int select(int i){
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+		return selectNode(i).getKey();
+	}
+	
+	/**
+	 * returns the node holding the i'th smallest key, 0 <= i < size.
+	 * descends by the subtree sizes.
+	 * time complexity: O(log n)
+	 */
+	private WAVLNode selectNode(int i){
+		WAVLNode node = root;
+		while (true){
+			int leftSize = node.getLeft().getSubtreeSize();
+			if (i == leftSize) return node;
+			if (i < leftSize) node = node.getLeft();
+			else{
+				i -= leftSize + 1;
+				node = node.getRight();
+			}
+		}
+	}
+	
+	/**
+	 * public int rank(int k)
+	 *
+	 * Returns the number of keys in the tree that are smaller than k.
+	 * if k is in the tree this is its index in keysToArray().
+	 * time complexity: O(log n), n=number of tree nodes
+	 */
+	public int rank(int k){
+		int smaller = 0;
+		WAVLNode node = root;
+		while (!node.isExternal()){
+			if (k <= node.getKey()){
+				if (k == node.getKey()) return smaller + node.getLeft().getSubtreeSize();
+				node = node.getLeft();
+			}
+			else{
+				smaller += node.getLeft().getSubtreeSize() + 1;
+				node = node.getRight();
+			}
+		}
+		return smaller;
+	}
+	
+   /**
+	* public int[] keysToArray(int from, int count)
+	*
+	* Returns the sorted keys at positions from, from+1, ... of keysToArray(),
+	* at most count of them (fewer if the tree ends first).
+	* throws IndexOutOfBoundsException if from is not in [0, size()] or count is negative.
+	* time complexity: O(log n + count)
+	*/
+	public int[] keysToArray(int from, int count){
+		int[] arr = new int[window(from, count)];
+		WAVLNode node = arr.length == 0 ? null : selectNode(from);
+		for (int j = 0; j < arr.length; j++){
+			arr[j] = node.getKey();
+			node = successor(node);
+		}
+		return arr;
+	}
+	
+   /**
+	* public String[] infoToArray(int from, int count)
+	*
+	* Returns the info of the keys at positions from, from+1, ... of keysToArray(),
+	* at most count of them (fewer if the tree ends first).
+	* throws IndexOutOfBoundsException if from is not in [0, size()] or count is negative.
+	* time complexity: O(log n + count)
+	*/
+	public String[] infoToArray(int from, int count){
+		String[] arr = new String[window(from, count)];
+		WAVLNode node = arr.length == 0 ? null : selectNode(from);
+		for (int j = 0; j < arr.length; j++){
+			arr[j] = node.getInfo();
+			node = successor(node);
+		}
+		return arr;
+	}
+	
+	// checks a [from, from+count) window and returns its length, cut at the end of the tree
+	private int window(int from, int count){
+		if (from < 0 || from > size || count < 0)
+			throw new IndexOutOfBoundsException("from " + from + ", count " + count + ", size " + size);
+		return Math.min(count, size - from);
+	}
+	
    /**
 	* public int insert(int k, String i)
 	* inserts an item with key k and info i to the WAVL tree.
 	* the tree must remain valid (keep its invariants).
 	* returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
 	* returns -1 if an item with key k already exists in the tree.
+	* a key above the maximum (below the minimum) is linked under maxFP (minFP) without a descent,
+	* so increasing keys are inserted in O(1) amortized time.
 	* time complexity: O(log n), n=number of tree nodes
 	*/
 	public int insert(int k, String i) {
+		WAVLNode start = root;
+		if (!empty()){
+			if (k > maxFP.getKey()) start = maxFP;
+			else if (k < minFP.getKey()) start = minFP;
+		}
+		return insertFrom(start, k, i) == null ? -1 : balanceops;
+	}
+	
+   /**
+	* inserts an item with key k and info i, descending from start,
+	* which must be the root or a node whose subtree range contains k.
+	* returns the new node, or null if k already exists in the tree.
+	* time complexity: O(depth of k below start) + O(1) amortized rebalancing
+	*/
+	private WAVLNode insertFrom(WAVLNode start, int k, String i){
 		this.balanceops = 0;
-		if (this.empty()){
-			//new node is the root
-			this.root = new WAVLNode(k,i);
-			this.insertUpdateFP(root); //update minFP & maxFP
-			size++;
-			return balanceops;
-		}
-		WAVLNode parent=findParent(root,k);
-		if(root.getKey() == k || ((!parent.getRight().isExternal() && parent.getRight().getKey()==k)||(!parent.getLeft().isExternal() && parent.getLeft().getKey()==k)))
-			return -1; //node already exists in the tree
-		
+		//single descent: either finds k or ends at the node under which k belongs
+		WAVLNode parent = start.isExternal() ? null : descend(start, k);
+		if (parent != null && parent.getKey() == k) return null; //node already exists in the tree
 		WAVLNode NodeToInsert=new WAVLNode(k,i);
 		this.insertUpdateFP(NodeToInsert); //update minFP & maxFP
+		size++;
+		modCount++;
+		if (metrics != null) metrics.insertion();
+		//new node is the root
+		if (parent == null){
+			this.root = NodeToInsert;
+			return NodeToInsert;
+		}
 		NodeToInsert.setParent(parent);
 		//new node is right child
 		if(k > parent.getKey()) parent.setRight(NodeToInsert);
 		//new node is left child
-		if(k < parent.getKey()) parent.setLeft(NodeToInsert);
+		else parent.setLeft(NodeToInsert);
+		updateSizes(parent, 1);
 		BalanceAfterInsertion(NodeToInsert);
-		size++;
 		
-		return balanceops;
+		return NodeToInsert;
+	}
+	
+   /**
+	* descends from node (not external) towards k.
+	* returns the node with key k, or the last node on the path (under which k would be inserted).
+	* time complexity: O(depth of k below node)
+	*/
+	private WAVLNode descend(WAVLNode node, int k){
+		int visited = 1;
+		while (k != node.getKey()){
+			WAVLNode next = k < node.getKey() ? node.getLeft() : node.getRight();
+			if (next.isExternal()) break;
+			node = next;
+			visited++;
+		}
+		if (metrics != null) metrics.descent(visited);
+		return node;
+	}
+	
+   /**
+	* climbs from node (not external) to the lowest ancestor whose subtree range contains k,
+	* so a descent for k can start there instead of at the root.
+	* stops as soon as it leaves a left (right) subtree whose parent's key is above (below) k.
+	* time complexity: O(log d), d=number of keys between node's key and k
+	*/
+	private WAVLNode climb(WAVLNode node, int k){
+		int from = node.getKey();
+		WAVLNode parent = node.getParent();
+		while (parent != null){
+			if (k > from && node == parent.getLeft() && k < parent.getKey()) return node;
+			if (k < from && node == parent.getRight() && k > parent.getKey()) return node;
+			if (k == from) return node;
+			node = parent;
+			parent = node.getParent();
+		}
+		return node;
 	}
 	
    /**
-	* Balances the tree after insertion
-	* either rotates around node or promotes the node's rank, according to the situation
+	* Balances the tree after insertion, bottom-up from node
+	* either rotates around node or promotes the node's parent, according to the situation
 	* time complexity: O(log n)-worst case, O(1)- amortized
 	*/
 	private void BalanceAfterInsertion(WAVLNode node){
-		
 		WAVLNode parent=node.getParent();
-		if(node == root || parent.getRank()-node.getRank() > 0)
-			   return;//the tree is valid WAVL
-		
-		WAVLNode rightchild=node.getRight();
-		WAVLNode leftchild=node.getLeft();
-		
-		if(node == parent.getLeft()){
-			//case 1 - promote
-			if(parent.getRank()-parent.getRight().getRank()==1){
-				promote(parent);
-				BalanceAfterInsertion(parent);
-			}
-			//case 2 - rotate right
-			else if(rightchild.getRank() < leftchild.getRank()){
-				demote(parent);
-				RotateRight(node);	
-			}
-			//case 3 - double rotate
-			else{
-				demote(parent);
-				demote(node);
-				promote(rightchild);
-				RotateLeft(rightchild);
-				RotateRight(rightchild);//no longer a right child of node,but it still points to the same node	
-			}
-		}
-		// up to symmetry
-		else{
-			//case 1 - promote
-			if(parent.getRank()-parent.getLeft().getRank()==1){
-				promote(parent);
-				BalanceAfterInsertion(parent);	
-			}
-			//case 2 - rotate left
-			else if(leftchild.getRank() < rightchild.getRank()){
-				demote(parent);
-				RotateLeft(node);
+		while (parent != null && parent.getRank() == node.getRank()){
+			if(node == parent.getLeft()){
+				//case 1 - promote, the problem may move up
+				if(parent.getRank()-parent.getRight().getRank()==1){
+					promote(parent);
+					node = parent;
+					parent = node.getParent();
+					continue;
+				}
+				WAVLNode rightchild=node.getRight();
+				//case 2 - rotate right
+				if(rightchild.getRank() < node.getLeft().getRank()){
+					demote(parent);
+					RotateRight(node);	
+					if (metrics != null) metrics.singleRotation();
+				}
+				//case 3 - double rotate
+				else{
+					demote(parent);
+					demote(node);
+					promote(rightchild);
+					RotateLeft(rightchild);
+					RotateRight(rightchild);//no longer a right child of node,but it still points to the same node	
+					if (metrics != null) metrics.doubleRotation();
+				}
 			}
-			//case 3 - double rotate
+			// up to symmetry
 			else{
-				demote(parent);
-				demote(node);
-				promote(leftchild);
-				RotateRight(leftchild);
-				RotateLeft(leftchild);//no longer a right child of node,but it still points to the same node	
+				//case 1 - promote, the problem may move up
+				if(parent.getRank()-parent.getLeft().getRank()==1){
+					promote(parent);
+					node = parent;
+					parent = node.getParent();
+					continue;
+				}
+				WAVLNode leftchild=node.getLeft();
+				//case 2 - rotate left
+				if(leftchild.getRank() < node.getRight().getRank()){
+					demote(parent);
+					RotateLeft(node);
+					if (metrics != null) metrics.singleRotation();
+				}
+				//case 3 - double rotate
+				else{
+					demote(parent);
+					demote(node);
+					promote(leftchild);
+					RotateRight(leftchild);
+					RotateLeft(leftchild);//no longer a left child of node,but it still points to the same node	
+					if (metrics != null) metrics.doubleRotation();
+				}
 			}
+			return; //a rotation always leaves a valid WAVL tree
 		}
 	}
 	
@@ -298,210 +1340,359 @@ public class WAVLTree {
 	* time complexity: O(log n), n=number of tree nodes
 	*/
 	public int delete(int k){
-		
 		balanceops = 0;
-		if (size == 0) return -1;
-		WAVLNode parent=findParent(root,k);
-		WAVLNode node;
-		boolean isRight = false;
-		
-		if (root.getKey() == k) node = root;
-		else if(!parent.getLeft().isExternal() && parent.getLeft().getKey() == k){
-			node=parent.getLeft();
-			isRight=false;
+		WAVLNode node = find(k);
+		if (node == null) return -1;
+		deleteNode(node);
+
+		return balanceops;
+	}
+
+   /**
+	* public WAVLNode pollFirst()
+	*
+	* removes the item with the smallest key from the tree,
+	* and returns it as a new node outside the tree, or null if the tree is empty.
+	* the item is found through minFP, with no descent,
+	* and deleteUpdateFP moves minFP to the new minimum in O(1).
+	* time complexity: O(log n) to update the subtree sizes, O(1) amortized rebalancing
+	*/
+	public WAVLNode pollFirst(){
+		return poll(minFP);
+	}
+	
+   /**
+	* public WAVLNode pollLast()
+	*
+	* removes the item with the largest key from the tree,
+	* and returns it as a new node outside the tree, or null if the tree is empty.
+	* the item is found through maxFP, with no descent,
+	* and deleteUpdateFP moves maxFP to the new maximum in O(1).
+	* time complexity: O(log n) to update the subtree sizes, O(1) amortized rebalancing
+	*/
+	public WAVLNode pollLast(){
+		return poll(maxFP);
+	}
+	
+	// the removed node object may be reused by the tree (delete swaps items), so the item is copied out
+	private WAVLNode poll(WAVLNode node){
+		if (node.isExternal()) return null;
+		WAVLNode item = copyOf(node);
+		balanceops = 0;
+		deleteNode(node);
+		return item;
+	}
+
+	/**
+	 * returns a new node with the item of node, or null if node is null.
+	 * nodes in the tree are not handed out: delete swaps items between them,
+	 * so a node would change its item under the caller.
+	 */
+	private static WAVLNode copyOf(WAVLNode node){
+		return node == null ? null : new WAVLNode(node.getKey(), node.getInfo());
+	}
+	
+   /**
+	* public int insertAll(int[] keys, String[] infos)
+	*
+	* inserts every item (keys[j], infos[j]) whose key is not in the tree yet;
+	* of equal keys in the batch only the first is inserted, as a loop of insert would do.
+	* the batch is sorted first. a batch of less than half the tree size is then inserted in key order
+	* with a finger, so each key climbs from its predecessor instead of descending from the root.
+	* a larger batch is built into a tree and merged with a join based union.
+	* returns the total number of rebalancing operations.
+	* time complexity: O(m log m + m log(n/m + 1)), m=batch size
+	*/
+	public int insertAll(int[] keys, String[] infos){
+		if (keys.length != infos.length) throw new IllegalArgumentException("keys and infos differ in length");
+		long[] batch = sortedDistinct(keys);
+		if ((long) batch.length * FINGER_RATIO < size){
+			int total = 0;
+			Finger finger = new Finger(root);
+			for (long item : batch) total += Math.max(finger.insert((int) (item >> 32), infos[(int) item]), 0);
+			return total;
+		}
+		int[] batchKeys = new int[batch.length];
+		String[] batchInfos = new String[batch.length];
+		for (int j = 0; j < batch.length; j++){
+			batchKeys[j] = (int) (batch[j] >> 32);
+			batchInfos[j] = infos[(int) batch[j]];
+		}
+		int before = size;
+		WAVLTree result = setOperation(SetOp.UNION, this, fromSorted(batchKeys, batchInfos), ForkJoinPool.commonPool());
+		take(result, before);
+		return result.balanceops;
+	}
+
+   /**
+	* public int deleteAll(int[] keys)
+	*
+	* deletes the items with the given keys that are in the tree, other keys are ignored.
+	* the batch is sorted first. a batch of less than half the tree size is then deleted in key order
+	* with a finger, a larger one is built into a tree and removed with a join based difference.
+	* returns the total number of rebalancing operations.
+	* time complexity: O(m log m + m log(n/m + 1)), m=batch size
+	*/
+	public int deleteAll(int[] keys){
+		long[] batch = sortedDistinct(keys);
+		if ((long) batch.length * FINGER_RATIO < size){
+			int total = 0;
+			Finger finger = new Finger(root);
+			for (long item : batch) total += Math.max(finger.delete((int) (item >> 32)), 0);
+			return total;
+		}
+		int[] batchKeys = new int[batch.length];
+		for (int j = 0; j < batch.length; j++) batchKeys[j] = (int) (batch[j] >> 32);
+		int before = size;
+		WAVLTree result = setOperation(SetOp.DIFFERENCE, this, fromSorted(batchKeys, new String[batchKeys.length]), ForkJoinPool.commonPool());
+		take(result, before);
+		return result.balanceops;
+	}
+
+   /**
+	* sorts the keys by value and then by position, and keeps the first position of every key.
+	* returns the distinct keys in increasing order, each packed as (key << 32) | position.
+	* time complexity: O(m log m), no boxing
+	*/
+	private static long[] sortedDistinct(int[] keys){
+		long[] packed = new long[keys.length];
+		for (int j = 0; j < keys.length; j++) packed[j] = ((long) keys[j] << 32) | j;
+		Arrays.sort(packed);
+		int count = 0;
+		for (int j = 0; j < packed.length; j++){
+			if (count > 0 && (packed[count - 1] >> 32) == (packed[j] >> 32)) continue;
+			packed[count++] = packed[j];
 		}
-		else if(!parent.getRight().isExternal() && parent.getRight().getKey() == k){
-			node=parent.getRight();
-			isRight=true;
+		return Arrays.copyOf(packed, count);
+	}
+
+	// takes over the items of other, which must not be used anymore, and counts the change from before items
+	private void take(WAVLTree other, int before){
+		if (metrics != null){ //the set operation that made other is not counted, only the items it added or removed
+			if (other.size > before) metrics.insertions(other.size - before);
+			else metrics.deletions(before - other.size);
 		}
-		else return -1;
+		root = other.root;
+		size = other.size;
+		minFP = other.minFP;
+		maxFP = other.maxFP;
+		modCount++;
+	}
+	
+   /**
+	* removes the item of node from the tree.
+	* returns a node that is still in the tree, near the removed item (null if the tree is now empty).
+	* time complexity: O(log n)-worst case, O(1)- amortized rebalancing
+	*/
+	private WAVLNode deleteNode(WAVLNode node){
 		size--;
+		modCount++;
+		if (metrics != null) metrics.deletion();
 		this.deleteUpdateFP(node); //update minFP & maxFP
-		node = deleteInitial(node, isRight); // move deletion to leaf
-		balanceAfterDeletion(node);  
-
-		return balanceops;
+		return deleteInitial(node); // move deletion to leaf, remove it and rebalance
 	}
    
-	private WAVLNode deleteInitial(WAVLNode node, boolean isRight ){
-		WAVLNode parent=node.getParent();
+   /**
+	* moves the item of node down to a leaf by swapping items (not nodes),
+	* unlinks that leaf and rebalances from its place.
+	* allocates nothing: the removed leaf is replaced by the shared external node.
+	* returns the unlinked leaf's parent (null if the tree is now empty).
+	*/
+	private WAVLNode deleteInitial(WAVLNode node){
 		//node has two children
 		if (!node.getLeft().isExternal() && !node.getRight().isExternal()){
 			WAVLNode successor = this.successor(node);
 			this.swap(node,successor);
-			//node = successor;
-			parent=node.getParent();
-			if(node==parent.getRight()) isRight=true;
-			else isRight=false;
+			node = successor;
 		}
 		// node has one child
 		if (!node.isALeaf()){
-			
-			if (!node.getLeft().isExternal()){
-				swap(node,node.getLeft());
-				//node = node.getLeft();
-			}
-			else{
-				swap(node,node.getRight());
-				//node = node.getRight();
-			}
-			parent=node.getParent();
-			if(node==parent.getRight()) isRight=true;
-			else isRight=false;
+			WAVLNode child = node.getLeft().isExternal() ? node.getRight() : node.getLeft();
+			swap(node,child);
+			node = child;
 		}
 		//node is a leaf
-		if (node == this.root){
-			root = new WAVLNode(null);
-			return root;
+		WAVLNode parent=node.getParent();
+		if (parent == null){
+			root = WAVLNode.EXTERNAL;
+			return null;
 		}
-		node = new WAVLNode(parent);
-		if(isRight) parent.setRight(node);
-		else parent.setLeft(node);
+		node.setParent(null);
+		if(node==parent.getRight()) parent.setRight(WAVLNode.EXTERNAL);
+		else parent.setLeft(WAVLNode.EXTERNAL);
+		updateSizes(parent, -1);
 		if(parent.getRank()-parent.getRight().getRank() == 2 && parent.getRank()-parent.getLeft().getRank() == 2)
 		   {	//not a legal leaf
 			   demote(parent);
+			   balanceAfterDeletion(parent,parent.getParent());
 			   return parent;
 		   }
-		return node;
+		balanceAfterDeletion(WAVLNode.EXTERNAL,parent);
+		return parent;
 	}
    /**
-	* Balances the tree after deletion op.
-	* either rotates around node or demotes node.
+	* Balances the tree after deletion op, bottom-up from node.
+	* node is a child of parent (possibly the external node, which has no parent of its own).
+	* either rotates around node's brother or demotes parent.
 	* time complexity: O(log n)-worst case, O(1)- amortized
 	*/
-	private void balanceAfterDeletion(WAVLNode node)
+	private void balanceAfterDeletion(WAVLNode node,WAVLNode parent)
 	{
-		WAVLNode parent =  node.getParent();
-		//finish rebalance
-		if (parent==null || parent.getRank()-node.getRank()<3){
-			return;
-		}
-		// node is right child
-		if (node == parent.getRight()){
-			WAVLNode brother = parent.getLeft();
-			//case 1
-			if (parent.getRank()-brother.getRank() == 2){
-				demote(parent);
-				balanceAfterDeletion(parent); 
-			}
-			//case 2
-			else if (brother.getRank()-brother.getLeft().getRank()==2 && brother.getRank()-brother.getRight().getRank()==2){
-				demote(parent);
-				demote(brother);
-				balanceAfterDeletion(parent);	
-			}
-   
-			//case 3
-			else if (brother.getRank()-brother.getLeft().getRank()==1){
-				RotateRight(brother);
-				promote(brother);
-				demote(parent);
-				//not a legal leaf
-				if (parent.isALeaf() && parent.getRank()-parent.getLeft().getRank()==2 && parent.getRank()-parent.getRight().getRank()==2){
+		//finish rebalance when node is not a 3-child
+		while (parent != null && parent.getRank()-node.getRank() == 3){
+			// node is right child
+			if (node == parent.getRight()){
+				WAVLNode brother = parent.getLeft();
+				//case 1
+				if (parent.getRank()-brother.getRank() == 2){
+					demote(parent);
+				}
+				//case 2
+				else if (brother.getRank()-brother.getLeft().getRank()==2 && brother.getRank()-brother.getRight().getRank()==2){
 					demote(parent);
+					demote(brother);
+				}
+				//case 3
+				else if (brother.getRank()-brother.getLeft().getRank()==1){
+					RotateRight(brother);
+					if (metrics != null) metrics.singleRotation();
+					promote(brother);
+					demote(parent);
+					//not a legal leaf
+					if (parent.isALeaf() && parent.getRank()-parent.getLeft().getRank()==2 && parent.getRank()-parent.getRight().getRank()==2){
+						demote(parent);
+					}
+					return;
+				}
+				//case 4
+				else{
+					WAVLNode axis = brother.getRight();
+					demote(parent);
+					demote(parent);
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					RotateLeft(axis);
+					RotateRight(axis);
+					if (metrics != null) metrics.doubleRotation();
+					return;
 				}
 			}
-			//case 4
+			// up to symmetry
 			else{
-				WAVLNode axis = brother.getRight();
-				demote(parent);
-				demote(parent);
-				demote(brother);
-				promote(axis);
-				promote(axis);
-				RotateLeft(axis);
-				RotateRight(axis);	
-			}
-		}
-		// up to symmetry
-		else{
-			WAVLNode brother = parent.getRight();
-			//case 1
-			
-			if (parent.getRank()-brother.getRank() == 2){
-				demote(parent);
-				balanceAfterDeletion(parent); 
-			}
-			//case 2
-			else if (brother.getRank()-brother.getLeft().getRank()==2 && brother.getRank()-brother.getRight().getRank()==2){
-				demote(parent);
-				demote(brother);
-				balanceAfterDeletion(parent);	
-			}  
-			//case 3
-			else if (brother.getRank()-brother.getRight().getRank()==1){
-				RotateLeft(brother);
-				promote(brother);
-				demote(parent);
-				//not a legal leaf
-				if (parent.isALeaf() && parent.getRank()-parent.getRight().getRank()==2 && parent.getRank()-parent.getLeft().getRank()==2){
+				WAVLNode brother = parent.getRight();
+				//case 1
+				if (parent.getRank()-brother.getRank() == 2){
+					demote(parent);
+				}
+				//case 2
+				else if (brother.getRank()-brother.getLeft().getRank()==2 && brother.getRank()-brother.getRight().getRank()==2){
+					demote(parent);
+					demote(brother);
+				}  
+				//case 3
+				else if (brother.getRank()-brother.getRight().getRank()==1){
+					RotateLeft(brother);
+					if (metrics != null) metrics.singleRotation();
+					promote(brother);
+					demote(parent);
+					//not a legal leaf
+					if (parent.isALeaf() && parent.getRank()-parent.getRight().getRank()==2 && parent.getRank()-parent.getLeft().getRank()==2){
+						demote(parent);
+					}
+					return;
+				}
+				//case 4
+				else{
+					WAVLNode axis = brother.getLeft();
+					demote(parent);
 					demote(parent);
-				} 
+					demote(brother);
+					promote(axis);
+					promote(axis);
+					RotateRight(axis);
+					RotateLeft(axis);
+					if (metrics != null) metrics.doubleRotation();
+					return;
+				}
 			}
-			//case 4
-			else{
-				WAVLNode axis = brother.getLeft();
-				demote(parent);
-				demote(parent);
-				demote(brother);
-				promote(axis);
-				promote(axis);
-				RotateRight(axis);
-				RotateLeft(axis);
-		   } 
-	   }
-   }  
+			//cases 1 and 2 - the problem may move up
+			node = parent;
+			parent = node.getParent();
+		}
+	}
 	
    /**
 	* private void swap(WAVLNode nodeA, WAVLNode nodeB)
-	* nodA must be higher in the tree than nodeB
+	* exchanges the items (key and info) of nodeA and nodeB, the tree shape stays as is.
+	* finger pointers follow the item that moves into nodeA (nodeB is about to be removed).
 	* time complexity: O(1)
 	*/
 	private void swap(WAVLNode nodeA, WAVLNode nodeB){
-		
-		WAVLNode tmp = new WAVLNode(nodeA.getKey(),nodeA.getInfo());
-		tmp.setParent(nodeA.getParent());
-		tmp.setRight(nodeA.getRight());
-		tmp.setLeft(nodeA.getLeft());
-		tmp.setRank(nodeA.getRank());
-		
-		nodeA.setRight(nodeB.getRight());
-		nodeA.setLeft(nodeB.getLeft());
-		nodeA.setRank(nodeB.getRank());
-		nodeA.getLeft().setParent(nodeA);
-		nodeA.getRight().setParent(nodeA);
-		if (nodeB.getParent() == nodeA) nodeA.setParent(nodeB);
-		else{
-			nodeA.setParent(nodeB.getParent());
-			if (nodeB == nodeB.getParent().getLeft()) nodeB.getParent().setLeft(nodeA);
-			else nodeB.getParent().setRight(nodeA);
-		}
-		
-		nodeB.setParent(tmp.getParent());
-		if (tmp.getRight() == nodeB) nodeB.setRight(nodeA);
-		else nodeB.setRight(tmp.getRight());
-		if (tmp.getLeft() == nodeB) nodeB.setLeft(nodeA);
-		else nodeB.setLeft(tmp.getLeft());
-		nodeB.setRank(tmp.getRank());
-		nodeB.getLeft().setParent(nodeB);
-		nodeB.getRight().setParent(nodeB);
-		if (nodeB.getParent() != null){
-			if (nodeA == nodeB.getParent().getLeft()) nodeB.getParent().setLeft(nodeB);
-			else nodeB.getParent().setRight(nodeB);
-		}
-		else root = nodeB;
+		int key = nodeA.getKey();
+		String info = nodeA.getInfo();
+		nodeA.setKey(nodeB.getKey());
+		nodeA.setInfo(nodeB.getInfo());
+		nodeB.setKey(key);
+		nodeB.setInfo(info);
+		if (minFP == nodeB) minFP = nodeA;
+		if (maxFP == nodeB) maxFP = nodeA;
 	}
 	
    /**
-	* returns the successor of node
-	* when node has right child
+	* returns the successor of node,
+	* or null if node holds the maximal key.
+	* climbs parent pointers when node has no right child, so no stack is needed.
 	* @param node
 	* @return successor
 	*/
 	private WAVLNode successor(WAVLNode node){
-		WAVLNode successor=node.getRight();
-		while(successor.getLeft().getRank()!=-1)successor=successor.getLeft();	
-		return successor;
+		if (!node.getRight().isExternal()){
+			WAVLNode successor=node.getRight();
+			while(!successor.getLeft().isExternal())successor=successor.getLeft();	
+			return successor;
+		}
+		WAVLNode parent = node.getParent();
+		while (parent != null && node == parent.getRight()){
+			node = parent;
+			parent = node.getParent();
+		}
+		return parent;
+	}
+	
+   /**
+	* returns the predecessor of node,
+	* or null if node holds the minimal key.
+	* @param node
+	* @return predecessor
+	*/
+	private WAVLNode predecessor(WAVLNode node){
+		if (!node.getLeft().isExternal()){
+			WAVLNode predecessor=node.getLeft();
+			while(!predecessor.getRight().isExternal())predecessor=predecessor.getRight();	
+			return predecessor;
+		}
+		WAVLNode parent = node.getParent();
+		while (parent != null && node == parent.getLeft()){
+			node = parent;
+			parent = node.getParent();
+		}
+		return parent;
+	}
+	
+   /**
+	* adds delta to the subtree size of node and all its ancestors
+	* time complexity: O(log n)
+	*/
+	private void updateSizes(WAVLNode node, int delta){
+		for (; node != null; node = node.getParent()) node.setSubtreeSize(node.getSubtreeSize() + delta);
+	}
+	
+   /**
+	* recomputes the subtree size of node from its children
+	*/
+	private static void resize(WAVLNode node){
+		node.setSubtreeSize(node.getLeft().getSubtreeSize() + node.getRight().getSubtreeSize() + 1);
 	}
 	
    /**
@@ -517,9 +1708,11 @@ public class WAVLTree {
 		else root = node;
 		node.getParent().setParent(node);
 		node.getParent().setLeft(node.getRight());
-		node.getRight().setParent(node.getParent());
+		if (!node.getRight().isExternal()) node.getRight().setParent(node.getParent());
 		node.setRight(node.getParent());
 		node.setParent(grandparent);
+		resize(node.getRight());
+		resize(node);
 		balanceops++;
 	}
 	
@@ -536,9 +1729,11 @@ public class WAVLTree {
 		else root = node;
 		node.getParent().setParent(node);
 		node.getParent().setRight(node.getLeft());
-		node.getLeft().setParent(node.getParent());
+		if (!node.getLeft().isExternal()) node.getLeft().setParent(node.getParent());
 		node.setLeft(node.getParent());
 		node.setParent(grandparent);
+		resize(node.getLeft());
+		resize(node);
 		balanceops++;
 	}
  
@@ -549,6 +1744,7 @@ public class WAVLTree {
 	private void promote(WAVLNode node){
 		   node.setRank(node.getRank()+1);
 		   balanceops++;
+		   if (metrics != null) metrics.promotion();
 	}
 	
    /**
@@ -558,8 +1754,280 @@ public class WAVLTree {
 	public void demote(WAVLNode node){
 		node.setRank(node.getRank()-1);
 		balanceops++; 
+		if (metrics != null) metrics.demotion();
+	}
+	
+
+/**
+ * public class WAVLIterator
+ *
+ * A cursor over the keys of the tree, in ascending or descending order,
+ * up to an inclusive bound. nextInt() returns the next key and info() the info of that key.
+ * it holds only the next node and walks parent pointers, so it needs O(1) extra memory
+ * and never writes to the tree.
+ * inserting to or deleting from the tree invalidates it (ConcurrentModificationException).
+ */
+public class WAVLIterator implements PrimitiveIterator.OfInt{
+	
+	private WAVLNode next; //null when the iteration is over
+	private WAVLNode last; //node of the last returned key
+	private final boolean ascending;
+	private final int bound; //last key to return (inclusive)
+	private final int expectedModCount;
+	
+	private WAVLIterator(WAVLNode first, boolean ascending, int bound){
+		this.ascending = ascending;
+		this.bound = bound;
+		this.expectedModCount = modCount;
+		this.next = inBound(first) ? first : null;
+	}
+	
+	private boolean inBound(WAVLNode node){
+		return node != null && (ascending ? node.getKey() <= bound : node.getKey() >= bound);
+	}
+	
+	@Override
+	public boolean hasNext(){
+		return next != null;
+	}
+	
+	/**
+	 * returns the next key and moves the cursor forward
+	 * time complexity: O(1) amortized
+	 */
+	@Override
+	public int nextInt(){
+		if (modCount != expectedModCount) throw new ConcurrentModificationException();
+		if (next == null) throw new NoSuchElementException();
+		last = next;
+		WAVLNode after = ascending ? successor(next) : predecessor(next);
+		next = inBound(after) ? after : null;
+		return last.getKey();
+	}
+	
+	/**
+	 * returns the info of the key last returned by nextInt()
+	 */
+	public String info(){
+		if (last == null) throw new IllegalStateException();
+		if (modCount != expectedModCount) throw new ConcurrentModificationException();
+		return last.getInfo();
+	}
+}
+
+/**
+ * private abstract class InOrderSpliterator
+ *
+ * The shared part of the key and node spliterators: a cursor over the in-order positions
+ * [index, fence), holding the node at index. advancing walks successor links,
+ * splitting finds the node of the middle position with selectNode.
+ */
+private abstract class InOrderSpliterator{
+	
+	protected WAVLNode next; //the node at position index, null once index reaches fence
+	protected int index;
+	protected final int fence; //one past the last position
+	private final int expectedModCount;
+	
+	protected InOrderSpliterator(WAVLNode next, int index, int fence){
+		this.next = next;
+		this.index = index;
+		this.fence = fence;
+		this.expectedModCount = modCount;
+	}
+	
+	// returns the node at index and moves on, not past the fence
+	protected WAVLNode advance(){
+		WAVLNode node = next;
+		next = ++index < fence ? successor(node) : null;
+		return node;
+	}
+	
+	// the first position of the half to split off the end, or -1 if the range is too small
+	protected int middle(){
+		checkModCount();
+		int mid = (index + fence) >>> 1;
+		return mid == index ? -1 : mid;
+	}
+	
+	protected void checkModCount(){
+		if (modCount != expectedModCount) throw new ConcurrentModificationException();
+	}
+	
+	public long estimateSize(){
+		return fence - index;
+	}
+	
+	public int characteristics(){
+		return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+	}
+}
+
+/**
+ * private class KeySpliterator
+ *
+ * The keys of positions [index, fence), in ascending order.
+ */
+private class KeySpliterator extends InOrderSpliterator implements Spliterator.OfInt{
+	
+	private KeySpliterator(WAVLNode next, int index, int fence){
+		super(next, index, fence);
+	}
+	
+	@Override
+	public Spliterator.OfInt trySplit(){
+		int mid = middle();
+		if (mid < 0) return null;
+		KeySpliterator prefix = new KeySpliterator(next, index, mid);
+		next = selectNode(mid);
+		index = mid;
+		return prefix;
+	}
+	
+	@Override
+	public boolean tryAdvance(IntConsumer action){
+		if (index >= fence) return false;
+		checkModCount();
+		action.accept(advance().getKey());
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(IntConsumer action){
+		while (index < fence) action.accept(advance().getKey());
+		checkModCount();
+	}
+	
+	@Override
+	public Comparator<? super Integer> getComparator(){
+		return null; //natural order
+	}
+}
+
+/**
+ * private class NodeSpliterator
+ *
+ * The nodes of positions [index, fence), in ascending key order.
+ */
+private class NodeSpliterator extends InOrderSpliterator implements Spliterator<WAVLNode>{
+	
+	private NodeSpliterator(WAVLNode next, int index, int fence){
+		super(next, index, fence);
+	}
+	
+	@Override
+	public Spliterator<WAVLNode> trySplit(){
+		int mid = middle();
+		if (mid < 0) return null;
+		NodeSpliterator prefix = new NodeSpliterator(next, index, mid);
+		next = selectNode(mid);
+		index = mid;
+		return prefix;
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super WAVLNode> action){
+		if (index >= fence) return false;
+		checkModCount();
+		action.accept(advance());
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(Consumer<? super WAVLNode> action){
+		while (index < fence) action.accept(advance());
+		checkModCount();
+	}
+	
+	@Override
+	public Comparator<? super WAVLNode> getComparator(){
+		return Comparator.comparingInt(WAVLNode::getKey);
+	}
+}
+
+/**
+ * public class Finger
+ *
+ * A cursor for finger search: search, insert and delete climb from the node the finger
+ * was left at by its previous operation, instead of descending from the root.
+ * for keys d positions away from the finger an operation costs O(log d),
+ * so sequential and near-sorted key streams are cheap.
+ * if the tree was changed through anything other than this finger,
+ * the finger starts over from the root.
+ */
+public class Finger{
+	
+	private WAVLNode node; //where the last operation ended, null if unknown
+	private int expectedModCount;
+	
+	private Finger(WAVLNode node){
+		this.node = node.isExternal() ? null : node;
+		this.expectedModCount = modCount;
+	}
+	
+	// the node to descend from for key k
+	private WAVLNode start(int k){
+		if (empty()) return root;
+		//past either end: the finger pointers are the closest possible fingers
+		if (k > maxFP.getKey()) return maxFP;
+		if (k < minFP.getKey()) return minFP;
+		if (node == null || modCount != expectedModCount) return root;
+		return climb(node, k);
+	}
+	
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null. the finger moves to where the search ended.
+	 * time complexity: O(log d), d=distance (in keys) from the finger
+	 */
+	public String search(int k){
+		if (metrics != null) metrics.search();
+		WAVLNode start = start(k);
+		if (start.isExternal()) return null;
+		node = descend(start, k);
+		expectedModCount = modCount;
+		return node.getKey() == k ? node.getInfo() : null;
+	}
+	
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i, like WAVLTree.insert, and moves the finger to it.
+	 * returns the number of rebalancing operations, or -1 if an item with key k already exists.
+	 * time complexity: O(log d) + O(1) amortized rebalancing, d=distance (in keys) from the finger
+	 */
+	public int insert(int k, String i){
+		WAVLNode inserted = insertFrom(start(k), k, i);
+		if (inserted == null) return -1;
+		node = inserted;
+		expectedModCount = modCount;
+		return balanceops;
 	}
 	
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k, like WAVLTree.delete, and leaves the finger next to it.
+	 * returns the number of rebalancing operations, or -1 if k was not found.
+	 * time complexity: O(log d) + O(1) amortized rebalancing, d=distance (in keys) from the finger
+	 */
+	public int delete(int k){
+		balanceops = 0;
+		WAVLNode start = start(k);
+		if (start.isExternal()) return -1;
+		WAVLNode found = descend(start, k);
+		if (found.getKey() != k){
+			node = found;
+			expectedModCount = modCount;
+			return -1;
+		}
+		node = deleteNode(found);
+		expectedModCount = modCount;
+		return balanceops;
+	}
+}
 
 /**
  * public class WAVLNode
@@ -569,18 +2037,25 @@ public class WAVLTree {
  * another file.
  * This is an example which can be deleted if no such classes are necessary.
  */
-public class WAVLNode{
+public static class WAVLNode{
+	
+	/**
+	 * the external node, shared by all trees.
+	 * rank -1, no children and no parent. it is never modified.
+	 */
+	static final WAVLNode EXTERNAL = new WAVLNode(null);
 	  
 	private WAVLNode left;
 	private WAVLNode right;
 	private WAVLNode parent;
 	private int rank;
+	private int subtreeSize; //number of nodes in the subtree of this node, 0 for external nodes
 	private int key;
 	private String info;
 	
    /**
 	* Leaf Constructor
-	* Create leaf with external nodes as children.
+	* Create leaf with the shared external node as both children.
 	* Rank is 0.
 	* @param key
 	* @param info
@@ -590,16 +2065,18 @@ public class WAVLNode{
 		  this.key=key;
 		  this.info=info;
 		  this.rank=0;
-		  this.right=new WAVLNode(this);
-		  this.left=new WAVLNode(this);
+		  this.subtreeSize=1;
+		  this.right=EXTERNAL;
+		  this.left=EXTERNAL;
 		  this.parent=null;
 	  }
    /**
 	* External node Constructor
 	* Rank is -1.
+	* only used for the shared EXTERNAL node.
 	* @param parent
 	*/
-	public WAVLNode (WAVLNode parent)
+	private WAVLNode (WAVLNode parent)
 	  {
 		  this.parent=parent;
 		  this.rank=-1;
@@ -637,6 +2114,12 @@ public class WAVLNode{
 	public void setRank(int rank) {
 		this.rank = rank;
 	}
+	public int getSubtreeSize() {
+		return subtreeSize;
+	}
+	public void setSubtreeSize(int subtreeSize) {
+		this.subtreeSize = subtreeSize;
+	}
 	public int getKey() {
 		return key;
 	}
@@ -0,0 +1,594 @@
+package wavl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ *
+ * WAVLBenchmark
+ *
+ * JMH benchmarks of WAVLTree and the engines built on it, next to java.util.TreeMap and ConcurrentSkipListMap,
+ * over the same workloads and key distributions. Built by WAVL/pom.xml:
+ *
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar [benchmark regex] [-p structure=...] [-p distribution=...] [-p n=...] -prof gc
+ *
+ * Every benchmark method is one operation, run in Mode.SampleTime: JMH times single invocations,
+ * so the percentiles it prints are those of single operations.
+ * The bytes allocated per operation are gc.alloc.rate.norm of -prof gc.
+ * The read benchmarks (search, minMax, keysToArray) run on a structure filled with all n keys,
+ * FrozenWAVLIndex among them; the others run on the structures that can change.
+ * insert and delete start over on a new structure when the keys run out, outside the timed invocation,
+ * but -prof gc counts what the refill allocates.
+ *
+ * The allocation of WAVLTree itself, one 40 byte WAVLNode per insert and nothing per delete
+ * (the shared external node, items swapped in place), is gc.alloc.rate.norm of insert and of
+ * deleteAfterInsert, an insert and a delete of the same key, for WAVL_TREE:
+ *   java -jar target/benchmarks.jar "insert|deleteAfterInsert" -p structure=WAVL_TREE -p distribution=UNIFORM -prof gc
+ *
+ * durable runs DurableWAVLTree with several writers, -t of them (4 unless given), opened with and without
+ * group commit, and reports operations per millisecond next to the latency percentiles:
+ *   java -jar target/benchmarks.jar durable -t 8 -p groupCommit=true,false -prof gc
+ *
+ * Implemented by:
+ * Eden Koveshi
+ * Amir Hertz
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WAVLBenchmark {
+
+	static final String INFO = "info";
+
+	@Benchmark
+	public String search(Reads state){
+		return state.reader.search(state.nextKey());
+	}
+
+	@Benchmark
+	public String minMax(Reads state){
+		return (state.nextKey() & 1) == 0 ? state.reader.min() : state.reader.max();
+	}
+
+	@Benchmark
+	public int[] keysToArray(Reads state){
+		return state.reader.keysToArray();
+	}
+
+	@Benchmark
+	public int insert(Inserts state){
+		return state.subject.insert(state.keys[state.next++]);
+	}
+
+	@Benchmark
+	public int delete(Deletes state){
+		return state.subject.delete(state.keys[state.next++]);
+	}
+
+	/**
+	 * adversarial delete-after-insert: on a structure of the even indexed keys, an odd indexed key
+	 * is inserted and deleted right away, so both rebalances run on the same path every time.
+	 */
+	@Benchmark
+	public int deleteAfterInsert(Pairs state){
+		int k = state.nextOddKey();
+		return state.subject.insert(k) + state.subject.delete(k);
+	}
+
+	/**
+	 * 50% search, 25% insert, 25% delete of random keys, on a structure of the first half of the keys
+	 */
+	@Benchmark
+	public void mixed(Mixed state, Blackhole blackhole){
+		int k = state.randomKey();
+		switch (state.step++ & 3){
+			case 0: blackhole.consume(state.subject.insert(k)); break;
+			case 1: blackhole.consume(state.subject.delete(k)); break;
+			default: blackhole.consume(state.subject.search(k));
+		}
+	}
+
+	/**
+	 * a change of a durable tree from one of the writers: an insert of the writer's next key, or its delete
+	 * if the key is there from the last pass over the writer's keys. returns once the change is on the disk.
+	 */
+	@Benchmark
+	@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Threads(4)
+	public int durable(Durable state, Writer writer) throws IOException{
+		int k = writer.nextKey();
+		int balanceops = state.tree.insert(k, INFO);
+		return balanceops == -1 ? state.tree.delete(k) : balanceops;
+	}
+
+	/**
+	 * the keys of a run, n keys of a distribution, and a cursor over them
+	 */
+	@State(Scope.Thread)
+	public static class Run{
+		@Param({"1048576"})
+		public int n;
+
+		@Param
+		public Distribution distribution;
+
+		int[] keys;
+		int next; //index of the next key
+
+		// called first by the trial setup of each state: JMH runs the setups of a subclass before those it inherits
+		void generateKeys(){
+			keys = distribution.keys(n, new SplittableRandom(42));
+		}
+
+		// the key at the cursor, going around at the end
+		int nextKey(){
+			int k = keys[next];
+			if (++next == keys.length) next = 0;
+			return k;
+		}
+	}
+
+	/**
+	 * a structure filled with all the keys, which the benchmarks only read
+	 */
+	public static class Reads extends Run{
+		@Param({"WAVL_TREE", "TREE_MAP", "SKIP_LIST", "CONCURRENT", "HASH_INDEXED", "PERSISTENT", "MAPPED", "FROZEN"})
+		public String structure;
+
+		Reader reader;
+
+		@Setup(Level.Trial)
+		public void fill(){
+			generateKeys();
+			if (structure.equals("FROZEN")){
+				WAVLTree tree = new WAVLTree();
+				for (int k : keys) tree.insert(k, INFO);
+				reader = new FrozenReader(tree.freeze());
+			}
+			else{
+				Subject subject = Structure.valueOf(structure).create();
+				for (int k : keys) subject.insert(k);
+				reader = subject;
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void close(){
+			reader.close();
+		}
+	}
+
+	/**
+	 * a structure the keys are inserted into, a new empty one whenever they run out
+	 */
+	public static class Inserts extends Run{
+		@Param
+		public Structure structure;
+
+		Subject subject;
+
+		@Setup(Level.Trial)
+		public void create(){
+			generateKeys();
+			subject = structure.create();
+		}
+
+		@Setup(Level.Invocation)
+		public void restart(){
+			if (next < keys.length) return;
+			subject.close();
+			subject = structure.create();
+			next = 0;
+		}
+
+		@TearDown(Level.Trial)
+		public void close(){
+			subject.close();
+		}
+	}
+
+	/**
+	 * a structure of all the keys, which are deleted, filled again whenever they run out
+	 */
+	public static class Deletes extends Run{
+		@Param
+		public Structure structure;
+
+		Subject subject;
+
+		@Setup(Level.Trial)
+		public void create(){
+			generateKeys();
+			fill();
+		}
+
+		@Setup(Level.Invocation)
+		public void restart(){
+			if (next < keys.length) return;
+			subject.close();
+			fill();
+			next = 0;
+		}
+
+		private void fill(){
+			subject = structure.create();
+			for (int k : keys) subject.insert(k);
+		}
+
+		@TearDown(Level.Trial)
+		public void close(){
+			subject.close();
+		}
+	}
+
+	/**
+	 * a structure of the even indexed keys, for deleteAfterInsert
+	 */
+	public static class Pairs extends Run{
+		@Param
+		public Structure structure;
+
+		Subject subject;
+
+		@Setup(Level.Trial)
+		public void create(){
+			generateKeys();
+			subject = structure.create();
+			for (int i = 0; i < keys.length; i += 2) subject.insert(keys[i]);
+			next = 1;
+		}
+
+		// the odd indexed key at the cursor, going around at the end
+		int nextOddKey(){
+			int k = keys[next];
+			next += 2;
+			if (next >= keys.length) next = 1;
+			return k;
+		}
+
+		@TearDown(Level.Trial)
+		public void close(){
+			subject.close();
+		}
+	}
+
+	/**
+	 * a structure of the first half of the keys, for mixed
+	 */
+	public static class Mixed extends Run{
+		@Param
+		public Structure structure;
+
+		Subject subject;
+		int step;
+		private final SplittableRandom random = new SplittableRandom(7);
+
+		@Setup(Level.Trial)
+		public void create(){
+			generateKeys();
+			subject = structure.create();
+			for (int i = 0; i < keys.length / 2; i++) subject.insert(keys[i]);
+		}
+
+		int randomKey(){
+			return keys[random.nextInt(keys.length)];
+		}
+
+		@TearDown(Level.Trial)
+		public void close(){
+			subject.close();
+		}
+	}
+
+	/**
+	 * a DurableWAVLTree in a new directory in the temporary directory, shared by the writers, deleted at the end
+	 */
+	@State(Scope.Benchmark)
+	public static class Durable{
+		@Param({"true", "false"})
+		public boolean groupCommit;
+
+		Path dir;
+		DurableWAVLTree tree;
+
+		@Setup(Level.Trial)
+		public void open() throws IOException{
+			dir = temporaryDirectory();
+			tree = DurableWAVLTree.open(dir, groupCommit);
+		}
+
+		@TearDown(Level.Trial)
+		public void close() throws IOException{
+			tree.close();
+			deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * the keys of one writer of durable: WRITER_KEYS keys no other writer touches
+	 */
+	@State(Scope.Thread)
+	public static class Writer{
+		static final int WRITER_KEYS = 1 << 12;
+
+		int first;
+		int next;
+
+		@Setup(Level.Trial)
+		public void start(ThreadParams thread){
+			first = thread.getThreadIndex() * WRITER_KEYS;
+		}
+
+		int nextKey(){
+			return first + (next++ & (WRITER_KEYS - 1));
+		}
+	}
+
+	/**
+	 * the reads the benchmarks need, over each structure under test
+	 */
+	interface Reader{
+		String search(int k);
+		int[] keysToArray();
+		String min();
+		String max();
+
+		/**
+		 * frees the files of a structure that lives in files
+		 */
+		default void close(){}
+	}
+
+	/**
+	 * a structure that can also change. insert and delete return what the structure's own method does,
+	 * -1 if the key was there (insert) or was not there (delete).
+	 */
+	interface Subject extends Reader{
+		int insert(int k);
+		int delete(int k);
+	}
+
+	/**
+	 * the structures that can change, each created empty
+	 */
+	public enum Structure{
+		WAVL_TREE{
+			Subject create(){
+				final WAVLTree tree = new WAVLTree();
+				return new Subject(){
+					public int insert(int k){ return tree.insert(k, INFO); }
+					public int delete(int k){ return tree.delete(k); }
+					public String search(int k){ return tree.search(k); }
+					public int[] keysToArray(){ return tree.keysToArray(); }
+					public String min(){ return tree.min(); }
+					public String max(){ return tree.max(); }
+				};
+			}
+		},
+		TREE_MAP{
+			Subject create(){ return new MapSubject(new TreeMap<Integer, String>()); }
+		},
+		SKIP_LIST{
+			Subject create(){ return new MapSubject(new ConcurrentSkipListMap<Integer, String>()); }
+		},
+		/**
+		 * uncontended, from one thread: the cost of the stamped lock over WAVLTree
+		 */
+		CONCURRENT{
+			Subject create(){
+				final ConcurrentWAVLTree tree = new ConcurrentWAVLTree();
+				return new Subject(){
+					public int insert(int k){ return tree.insert(k, INFO); }
+					public int delete(int k){ return tree.delete(k); }
+					public String search(int k){ return tree.search(k); }
+					public int[] keysToArray(){ return tree.keysToArray(); }
+					public String min(){ return tree.min(); }
+					public String max(){ return tree.max(); }
+				};
+			}
+		},
+		HASH_INDEXED{
+			Subject create(){
+				final HashIndexedWAVLTree tree = new HashIndexedWAVLTree();
+				return new Subject(){
+					public int insert(int k){ return tree.insert(k, INFO); }
+					public int delete(int k){ return tree.delete(k); }
+					public String search(int k){ return tree.search(k); }
+					public int[] keysToArray(){ return tree.keysToArray(); }
+					public String min(){ return tree.min(); }
+					public String max(){ return tree.max(); }
+				};
+			}
+		},
+		PERSISTENT{
+			Subject create(){
+				final PersistentWAVLTree tree = new PersistentWAVLTree();
+				return new Subject(){
+					public int insert(int k){ return tree.insert(k, INFO); }
+					public int delete(int k){ return tree.delete(k); }
+					public String search(int k){ return tree.search(k); }
+					public int[] keysToArray(){ return tree.keysToArray(); }
+					public String min(){ return tree.min(); }
+					public String max(){ return tree.max(); }
+				};
+			}
+		},
+		/**
+		 * in a new file in the temporary directory, deleted by close
+		 */
+		MAPPED{
+			Subject create(){
+				final Path dir = temporaryDirectory();
+				final MappedWAVLTree tree;
+				try{
+					tree = MappedWAVLTree.open(dir.resolve("tree"));
+				}
+				catch (IOException e){
+					throw new UncheckedIOException(e);
+				}
+				return new Subject(){
+					public int insert(int k){ return tree.insert(k, INFO); }
+					public int delete(int k){ return tree.delete(k); }
+					public String search(int k){ return tree.search(k); }
+					public int[] keysToArray(){ return tree.keysToArray(); }
+					public String min(){ return tree.min(); }
+					public String max(){ return tree.max(); }
+					public void close(){
+						try{
+							tree.close();
+						}
+						catch (IOException e){
+							throw new UncheckedIOException(e);
+						}
+						deleteDirectory(dir);
+					}
+				};
+			}
+		};
+
+		abstract Subject create();
+	}
+
+	/**
+	 * a FrozenWAVLIndex, made from a filled WAVLTree. min and max are its first and last slots
+	 */
+	static final class FrozenReader implements Reader{
+		private final FrozenWAVLIndex index;
+
+		FrozenReader(FrozenWAVLIndex index){
+			this.index = index;
+		}
+
+		public String search(int k){ return index.search(k); }
+		public int[] keysToArray(){ return index.keysToArray(); }
+		public String min(){ return index.empty() ? null : index.infoAt(index.ceiling(Integer.MIN_VALUE)); }
+		public String max(){ return index.empty() ? null : index.infoAt(index.floor(Integer.MAX_VALUE)); }
+	}
+
+	/**
+	 * a NavigableMap with the semantics of WAVLTree: insert keeps an existing item
+	 */
+	static final class MapSubject implements Subject{
+		private final NavigableMap<Integer, String> map;
+
+		MapSubject(NavigableMap<Integer, String> map){
+			this.map = map;
+		}
+
+		public int insert(int k){ return map.putIfAbsent(k, INFO) == null ? 0 : -1; }
+		public int delete(int k){ return map.remove(k) == null ? -1 : 0; }
+		public String search(int k){ return map.get(k); }
+
+		public int[] keysToArray(){
+			int[] keys = new int[map.size()];
+			int i = 0;
+			for (Integer k : map.keySet()) keys[i++] = k;
+			return keys;
+		}
+
+		public String min(){
+			Map.Entry<Integer, String> entry = map.firstEntry();
+			return entry == null ? null : entry.getValue();
+		}
+
+		public String max(){
+			Map.Entry<Integer, String> entry = map.lastEntry();
+			return entry == null ? null : entry.getValue();
+		}
+	}
+
+	public enum Distribution{
+		UNIFORM{
+			int[] keys(int n, SplittableRandom random){
+				int[] keys = new int[n];
+				for (int i = 0; i < n; i++) keys[i] = random.nextInt();
+				return keys;
+			}
+		},
+		SEQUENTIAL{
+			int[] keys(int n, SplittableRandom random){
+				int[] keys = new int[n];
+				for (int i = 0; i < n; i++) keys[i] = i;
+				return keys;
+			}
+		},
+		/**
+		 * Zipfian ranks (theta 0.99, Gray et al. "Quickly generating billion-record synthetic databases"),
+		 * scrambled by a multiplicative hash so the hot keys are spread over the key space.
+		 * repeated keys make insert a no-op and search a hit.
+		 */
+		ZIPFIAN{
+			int[] keys(int n, SplittableRandom random){
+				double theta = 0.99;
+				double zetan = 0;
+				for (int i = 1; i <= n; i++) zetan += 1 / Math.pow(i, theta);
+				double zeta2 = 1 + 1 / Math.pow(2, theta);
+				double alpha = 1 / (1 - theta);
+				double eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+				int[] keys = new int[n];
+				for (int i = 0; i < n; i++){
+					double u = random.nextDouble();
+					double uz = u * zetan;
+					long rank = uz < 1 ? 0 : uz < zeta2 ? 1 : (long) (n * Math.pow(eta * u - eta + 1, alpha));
+					keys[i] = (int) (Math.min(rank, n - 1) * 0x9E3779B9L);
+				}
+				return keys;
+			}
+		};
+
+		abstract int[] keys(int n, SplittableRandom random);
+	}
+
+	// a new empty directory for a structure that lives in files
+	static Path temporaryDirectory(){
+		try{
+			return Files.createTempDirectory("wavl-benchmark");
+		}
+		catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static void deleteDirectory(Path dir){
+		try{
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)){
+				for (Path file : files) Files.delete(file);
+			}
+			Files.delete(dir);
+		}
+		catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+}